@@ -0,0 +1,97 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.util.Date;
+
+/**
+ * A benchmark for encoding commits. It times Codec against the Java
+ * serialization it replaced on commits tracking many files, and prints
+ * the size of each encoding and the throughput of encoding and decoding.
+ * Usage: java gitlet.CodecBenchmark [FILES [ROUNDS]]
+ * @author Ting Qi
+ */
+class CodecBenchmark {
+
+    /**
+     * Run the benchmark.
+     * @param args is the number of files per commit and of rounds.
+     */
+    public static void main(String[] args) {
+        int files = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        Commit commit = new Commit("benchmark commit", "c" + sha1("p"),
+                null, new Date(1500000000000L));
+        for (int i = 0; i < files; i += 1) {
+            commit.put("src/dir" + (i % 50) + "/File" + i + ".java",
+                    sha1("blob" + i));
+        }
+        commit.sha1();
+
+        byte[] serialized = Utils.serialize(commit);
+        byte[] encoded = Codec.encode(commit);
+        Commit back = Codec.decode(new ByteArrayInputStream(encoded),
+                Commit.class);
+        if (!back.getFile().equals(commit.getFile())
+                || !back.getSha1().equals(commit.getSha1())
+                || back.getTime() != commit.getTime()) {
+            throw new AssertionError("decoded commit differs");
+        }
+        System.out.printf("%d files: serialized %d bytes, encoded %d "
+                + "bytes%n", files, serialized.length, encoded.length);
+
+        for (int pass = 0; pass < 2; pass += 1) {
+            long start = System.nanoTime();
+            for (int r = 0; r < rounds; r += 1) {
+                serialized = Utils.serialize(commit);
+            }
+            long serialize = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int r = 0; r < rounds; r += 1) {
+                back = Codec.decode(new ByteArrayInputStream(serialized),
+                        Commit.class);
+            }
+            long deserialize = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int r = 0; r < rounds; r += 1) {
+                encoded = Codec.encode(commit);
+            }
+            long encode = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int r = 0; r < rounds; r += 1) {
+                back = Codec.decode(new ByteArrayInputStream(encoded),
+                        Commit.class);
+            }
+            long decode = System.nanoTime() - start;
+            if (pass == 1) {
+                report("serialize", serialize, rounds, serialized.length);
+                report("deserialize", deserialize, rounds,
+                        serialized.length);
+                report("Codec.encode", encode, rounds, encoded.length);
+                report("Codec.decode", decode, rounds, encoded.length);
+            }
+        }
+    }
+
+    /**
+     * Print the throughput of one measurement.
+     * @param what is what was measured.
+     * @param nanos is the time taken.
+     * @param rounds is the number of objects.
+     * @param bytes is the size of each object.
+     */
+    private static void report(String what, long nanos, int rounds,
+                               int bytes) {
+        double secs = nanos / 1e9;
+        System.out.printf("%-12s %9.0f commits/s %8.1f MB/s%n", what,
+                rounds / secs, (double) rounds * bytes / secs / 1e6);
+    }
+
+    /**
+     * Get the sha1 of the string.
+     * @param s is the string.
+     * @return String.
+     */
+    private static String sha1(String s) {
+        return Utils.sha1(s);
+    }
+}
@@ -0,0 +1,432 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Benchmarks of the core operations, run by Harness: hashing, the two
+ * encodings of a commit, building a commit, and the commit, status,
+ * merge and log commands on repositories built to the size, file size
+ * and history depth given by the parameters. The durableCommit
+ * benchmark runs add and commit as Main does, each in a transaction,
+ * with forcing to disk on and off, so its scores give the throughput of
+ * durable commits and what durability costs.
+ * Usage: java gitlet.CoreBenchmark [Harness options]
+ * @author Ting Qi
+ */
+class CoreBenchmark {
+
+    /**
+     * Run the benchmarks.
+     * @param args is the options of Harness.
+     */
+    public static void main(String... args) {
+        new Harness(CoreBenchmark.class,
+            new Harness.Spec("sha1", Sha1::new, "size", "1024,65536,1048576"),
+            new Harness.Spec("sha1File", Sha1File::new,
+                    "size", "65536,1048576"),
+            new Harness.Spec("serialize", Serialize::new,
+                    "files", "100,1000,10000"),
+            new Harness.Spec("readObject", ReadObject::new,
+                    "files", "100,1000,10000"),
+            new Harness.Spec("encode", Encode::new,
+                    "files", "100,1000,10000"),
+            new Harness.Spec("decode", Decode::new,
+                    "files", "100,1000,10000"),
+            new Harness.Spec("newCommit", NewCommit::new,
+                    "files", "100,1000,10000"),
+            new Harness.Spec("commit", CommitCommand::new,
+                    "files", "100,1000", "size", "1024,16384"),
+            new Harness.Spec("durableCommit", DurableCommit::new,
+                    "changed", "1,100", "fsync", "on,off"),
+            new Harness.Spec("status", StatusCommand::new,
+                    "files", "100,1000,5000"),
+            new Harness.Spec("merge", MergeCommand::new, "depth", "10,300"),
+            new Harness.Spec("log", LogCommand::new, "depth", "10,300"))
+            .main(args);
+    }
+
+    /** Hashing bytes in memory. */
+    private static class Sha1 implements Harness.Fixture {
+        @Override
+        public void setup(Map<String, String> params) {
+            _data = new byte[Integer.parseInt(params.get("size"))];
+            new Random(21).nextBytes(_data);
+        }
+
+        @Override
+        public Object call() {
+            return Utils.sha1((Object) _data);
+        }
+
+        /** The bytes hashed. */
+        private byte[] _data;
+    }
+
+    /** Hashing a working file. */
+    private static class Sha1File implements Harness.Fixture {
+        @Override
+        public void setup(Map<String, String> params) {
+            byte[] data = new byte[Integer.parseInt(params.get("size"))];
+            new Random(21).nextBytes(data);
+            Utils.writeContents(_file, data);
+        }
+
+        @Override
+        public Object call() {
+            return Utils.sha1(_file);
+        }
+
+        /** The file hashed. */
+        private final File _file = new File("data");
+    }
+
+    /** Java serialization of a commit. */
+    private static class Serialize implements Harness.Fixture {
+        @Override
+        public void setup(Map<String, String> params) {
+            _commit = commit(Integer.parseInt(params.get("files")));
+        }
+
+        @Override
+        public Object call() {
+            return Utils.serialize(_commit);
+        }
+
+        /** The commit. */
+        private Commit _commit;
+    }
+
+    /** Reading a serialized commit from a file. */
+    private static class ReadObject implements Harness.Fixture {
+        @Override
+        public void setup(Map<String, String> params) {
+            Utils.writeObject(_file,
+                    commit(Integer.parseInt(params.get("files"))));
+        }
+
+        @Override
+        public Object call() {
+            return Utils.readObject(_file, Commit.class);
+        }
+
+        /** The file holding the commit. */
+        private final File _file = new File("commit");
+    }
+
+    /** Encoding a commit with Codec. */
+    private static class Encode implements Harness.Fixture {
+        @Override
+        public void setup(Map<String, String> params) {
+            _commit = commit(Integer.parseInt(params.get("files")));
+        }
+
+        @Override
+        public Object call() {
+            return Codec.encode(_commit);
+        }
+
+        /** The commit. */
+        private Commit _commit;
+    }
+
+    /** Decoding a commit with Codec. */
+    private static class Decode implements Harness.Fixture {
+        @Override
+        public void setup(Map<String, String> params) {
+            Codec.write(_file, commit(Integer.parseInt(params.get("files"))));
+        }
+
+        @Override
+        public Object call() {
+            return Codec.read(_file, Commit.class);
+        }
+
+        /** The file holding the commit. */
+        private final File _file = new File("commit");
+    }
+
+    /** Building a commit and its id from a file map. */
+    private static class NewCommit implements Harness.Fixture {
+        @Override
+        public void setup(Map<String, String> params) {
+            int n = Integer.parseInt(params.get("files"));
+            _names = new String[n];
+            _ids = new String[n];
+            for (int i = 0; i < n; i += 1) {
+                _names[i] = path(i);
+                _ids[i] = Utils.sha1("blob" + i);
+            }
+        }
+
+        @Override
+        public Object call() {
+            Commit c = commit(_names, _ids);
+            c.sha1();
+            return c;
+        }
+
+        /** The file names. */
+        private String[] _names;
+
+        /** Their blob ids. */
+        private String[] _ids;
+    }
+
+    /** Changing, adding and committing one file. */
+    private static class CommitCommand implements Harness.Fixture {
+        @Override
+        public void setup(Map<String, String> params) {
+            _size = Integer.parseInt(params.get("size"));
+            _names = repository(Integer.parseInt(params.get("files")), _size);
+        }
+
+        @Override
+        public void prepare() {
+            _count += 1;
+            _name = _names.get(_count % _names.size());
+            Utils.writeContents(new File(_name), contents(_count, _size));
+        }
+
+        @Override
+        public Object call() {
+            Commands cmd = new Commands();
+            cmd.add(_name);
+            cmd.commit("change " + _count);
+            cmd.close();
+            return cmd;
+        }
+
+        /** The size of each file. */
+        private int _size;
+
+        /** The files of the repository. */
+        private List<String> _names;
+
+        /** The file changed by the next call. */
+        private String _name;
+
+        /** Calls so far. */
+        private int _count;
+    }
+
+    /** Changing CHANGED files of a thousand, then adding and committing
+     *  them in a transaction each, forcing files to disk if FSYNC is
+     *  on. */
+    private static class DurableCommit implements Harness.Fixture {
+        @Override
+        public void setup(Map<String, String> params) {
+            Transaction.setDurable(params.get("fsync").equals("on"));
+            _changed = Integer.parseInt(params.get("changed"));
+            _names = repository(1000, 1024);
+        }
+
+        @Override
+        public void prepare() {
+            _count += 1;
+            _add = new ArrayList<>(List.of("add"));
+            for (int i = 0; i < _changed; i += 1) {
+                int k = _count * _changed + i;
+                String name = _names.get(k % _names.size());
+                Utils.writeContents(new File(name), contents(k, 1024));
+                _add.add(name);
+            }
+        }
+
+        @Override
+        public Object call() {
+            Commands cmd = new Commands();
+            Main.run(cmd, _add.toArray(new String[0]));
+            Main.run(cmd, "commit", "change " + _count);
+            cmd.close();
+            return cmd;
+        }
+
+        /** Files changed by each commit. */
+        private int _changed;
+
+        /** The files of the repository. */
+        private List<String> _names;
+
+        /** The add command of the next call. */
+        private List<String> _add;
+
+        /** Calls so far. */
+        private int _count;
+    }
+
+    /** Status of a repository with one file in a hundred changed. */
+    private static class StatusCommand implements Harness.Fixture {
+        @Override
+        public void setup(Map<String, String> params) {
+            List<String> names =
+                repository(Integer.parseInt(params.get("files")), 256);
+            for (int i = 0; i < names.size(); i += 100) {
+                Utils.writeContents(new File(names.get(i)), "changed\n");
+            }
+        }
+
+        @Override
+        public Object call() {
+            Commands cmd = new Commands();
+            cmd.status();
+            cmd.close();
+            return cmd;
+        }
+    }
+
+    /** Merging two branches each DEPTH commits past their split. */
+    private static class MergeCommand implements Harness.Fixture {
+        @Override
+        public void setup(Map<String, String> params) {
+            int depth = Integer.parseInt(params.get("depth"));
+            repository(20, 256);
+            new Commands().branch("other");
+            history("ours", depth);
+            _head = Refs.read("master");
+            Commands cmd = new Commands();
+            cmd.checkout(new String[] {"checkout", "other"});
+            cmd.close();
+            history("theirs", depth);
+            cmd = new Commands();
+            cmd.checkout(new String[] {"checkout", "master"});
+            cmd.close();
+        }
+
+        @Override
+        public void prepare() {
+            Commands cmd = new Commands();
+            cmd.reset(_head);
+            cmd.close();
+        }
+
+        @Override
+        public Object call() {
+            Commands cmd = new Commands();
+            cmd.merge("other");
+            cmd.close();
+            return cmd;
+        }
+
+        /** The head of master before merging. */
+        private String _head;
+    }
+
+    /** Log of a history DEPTH commits deep. */
+    private static class LogCommand implements Harness.Fixture {
+        @Override
+        public void setup(Map<String, String> params) {
+            repository(20, 256);
+            history("file", Integer.parseInt(params.get("depth")));
+        }
+
+        @Override
+        public Object call() {
+            Commands cmd = new Commands();
+            cmd.log();
+            return cmd;
+        }
+    }
+
+    /**
+     * Get a commit tracking N files.
+     * @param n is the number of files.
+     * @return Commit.
+     */
+    private static Commit commit(int n) {
+        String[] names = new String[n], ids = new String[n];
+        for (int i = 0; i < n; i += 1) {
+            names[i] = path(i);
+            ids[i] = Utils.sha1("blob" + i);
+        }
+        Commit c = commit(names, ids);
+        c.sha1();
+        return c;
+    }
+
+    /**
+     * Get a commit tracking the files.
+     * @param names is the file names.
+     * @param ids is their blob ids.
+     * @return Commit.
+     */
+    private static Commit commit(String[] names, String[] ids) {
+        Commit c = new Commit("benchmark commit", Utils.sha1("parent"),
+                null, new Date(1500000000000L));
+        for (int i = 0; i < names.length; i += 1) {
+            c.put(names[i], ids[i]);
+        }
+        return c;
+    }
+
+    /**
+     * Initialize a repository in the working directory and commit N
+     * files of SIZE bytes to it.
+     * @param n is the number of files.
+     * @param size is the size of each file.
+     * @return the file names.
+     */
+    private static List<String> repository(int n, int size) {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < n; i += 1) {
+            String name = path(i);
+            File f = new File(name);
+            f.getParentFile().mkdirs();
+            Utils.writeContents(f, contents(i, size));
+            names.add(name);
+        }
+        Commands cmd = new Commands();
+        cmd.init();
+        cmd = new Commands();
+        cmd.add(names.toArray(new String[0]));
+        cmd.commit("files");
+        cmd.close();
+        return names;
+    }
+
+    /**
+     * Commit DEPTH changes to the file on the current branch.
+     * @param name is the file name.
+     * @param depth is the number of commits.
+     */
+    private static void history(String name, int depth) {
+        for (int i = 0; i < depth; i += 1) {
+            Utils.writeContents(new File(name), name + " " + i + "\n");
+            Commands cmd = new Commands();
+            cmd.add(name);
+            cmd.commit(name + " " + i);
+            cmd.close();
+        }
+    }
+
+    /**
+     * Get the path of the Ith file, 50 files to a directory.
+     * @param i is the index of the file.
+     * @return String.
+     */
+    private static String path(int i) {
+        return "src/dir" + i / 50 + "/File" + i + ".java";
+    }
+
+    /**
+     * Get SIZE bytes of text that differ with I.
+     * @param i is the seed.
+     * @param size is the size.
+     * @return byte[].
+     */
+    private static byte[] contents(int i, int size) {
+        byte[] b = new byte[size];
+        Random random = new Random(i);
+        for (int k = 0; k < size; k += 1) {
+            b[k] = (byte) ('a' + random.nextInt(26));
+        }
+        for (int k = 63; k < size; k += 64) {
+            b[k] = '\n';
+        }
+        return b;
+    }
+}
@@ -0,0 +1,430 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * A small benchmark harness in the manner of JMH, which the build has no
+ * way to fetch. Each benchmark is run once for every combination of its
+ * parameters, each in a JVM of its own whose working directory is a new
+ * empty directory, so fixtures can build a repository there. A run is a
+ * number of warmup iterations and then measured ones, each calling the
+ * benchmark for a fixed time, and scores the average time per call. The
+ * results are printed as a table and written as JSON in the layout of
+ * JMH's "-rf json", so the tools that compare JMH results across builds
+ * can read them.
+ * Usage: java gitlet.CLASS [-wi N] [-i N] [-r SECONDS]
+ *        [-p NAME=V1,V2...]... [-rff FILE] [REGEXP]
+ * @author Ting Qi
+ */
+class Harness {
+
+    /** One benchmark: a fixture set up once per run, then called. */
+    interface Fixture {
+
+        /**
+         * Set up for the parameters, untimed.
+         * @param params is the value of each parameter.
+         * @throws Exception if it cannot be set up.
+         */
+        void setup(Map<String, String> params) throws Exception;
+
+        /**
+         * Get ready for the next call, untimed.
+         * @throws Exception if it cannot.
+         */
+        default void prepare() throws Exception {
+        }
+
+        /**
+         * Do the timed work once.
+         * @return a result of the work, so it is not optimized away.
+         * @throws Exception if it fails.
+         */
+        Object call() throws Exception;
+    }
+
+    /** A named benchmark with the values each of its parameters takes. */
+    static class Spec {
+
+        /**
+         * A benchmark.
+         * @param name is its name.
+         * @param fixture makes its fixture.
+         * @param params is the name of each parameter followed by its
+         *               values, separated by commas.
+         */
+        Spec(String name, Supplier<Fixture> fixture, String... params) {
+            _name = name;
+            _fixture = fixture;
+            _params = new LinkedHashMap<>();
+            for (int i = 0; i + 1 < params.length; i += 2) {
+                _params.put(params[i], params[i + 1].split(","));
+            }
+        }
+
+        /** The name. */
+        private final String _name;
+
+        /** Makes the fixture. */
+        private final Supplier<Fixture> _fixture;
+
+        /** The values of each parameter. */
+        private final LinkedHashMap<String, String[]> _params;
+    }
+
+    /**
+     * A harness for the benchmarks of a class.
+     * @param owner is the class, whose main runs the harness.
+     * @param specs is the benchmarks.
+     */
+    Harness(Class<?> owner, Spec... specs) {
+        _owner = owner;
+        _specs = specs;
+    }
+
+    /**
+     * Run the benchmarks selected by the arguments, or one run of a
+     * benchmark if this is a forked JVM.
+     * @param args is the command-line arguments.
+     */
+    void main(String... args) {
+        if (args.length > 0 && args[0].equals(FORK)) {
+            forked(args);
+            return;
+        }
+        LinkedHashMap<String, String[]> overrides = new LinkedHashMap<>();
+        Pattern filter = Pattern.compile(".*");
+        String results = "results.json";
+        for (int i = 0; i < args.length; i += 1) {
+            switch (args[i]) {
+            case "-wi":
+                _warmups = Integer.parseInt(args[++i]);
+                break;
+            case "-i":
+                _iterations = Integer.parseInt(args[++i]);
+                break;
+            case "-r":
+                _seconds = Double.parseDouble(args[++i]);
+                break;
+            case "-rff":
+                results = args[++i];
+                break;
+            case "-p":
+                String[] p = args[++i].split("=", 2);
+                overrides.put(p[0], p[1].split(","));
+                break;
+            default:
+                filter = Pattern.compile(args[i]);
+            }
+        }
+        List<String> json = new ArrayList<>();
+        System.out.printf("%-40s %5s %12s %10s  %s%n", "Benchmark", "Cnt",
+                "Score", "Error", "Units");
+        for (Spec spec : _specs) {
+            if (!filter.matcher(spec._name).find()) {
+                continue;
+            }
+            LinkedHashMap<String, String[]> space =
+                new LinkedHashMap<>(spec._params);
+            for (Map.Entry<String, String[]> e : overrides.entrySet()) {
+                space.replace(e.getKey(), e.getValue());
+            }
+            for (LinkedHashMap<String, String> params : product(space)) {
+                double[] scores = launch(spec, params);
+                json.add(report(spec, params, scores));
+            }
+        }
+        try {
+            Files.writeString(new File(results).toPath(),
+                    "[\n" + String.join(",\n", json) + "\n]\n");
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        System.out.println("Results written to " + results + ".");
+    }
+
+    /**
+     * Run the benchmark with the parameters in a JVM of its own, in a
+     * new empty directory.
+     * @param spec is the benchmark.
+     * @param params is the parameters.
+     * @return the score of each measured iteration.
+     */
+    private double[] launch(Spec spec, Map<String, String> params) {
+        List<String> args = new ArrayList<>();
+        args.add(FORK);
+        args.add(spec._name);
+        args.add(Integer.toString(_warmups));
+        args.add(Integer.toString(_iterations));
+        args.add(Double.toString(_seconds));
+        for (Map.Entry<String, String> e : params.entrySet()) {
+            args.add(e.getKey() + "=" + e.getValue());
+        }
+        return fork(_owner, args).stream()
+            .mapToDouble(Double::parseDouble).toArray();
+    }
+
+    /**
+     * Run the main of the class in a new JVM whose working directory is
+     * a new empty directory, deleted afterwards.
+     * @param owner is the class.
+     * @param args is the arguments of its main.
+     * @return the lines it printed.
+     */
+    static List<String> fork(Class<?> owner, List<String> args) {
+        List<String> cmd = new ArrayList<>();
+        cmd.add(Path.of(System.getProperty("java.home"), "bin", "java")
+                .toString());
+        cmd.add("-cp");
+        List<String> cp = new ArrayList<>();
+        for (String e : System.getProperty("java.class.path")
+                 .split(File.pathSeparator)) {
+            cp.add(new File(e).getAbsolutePath());
+        }
+        cmd.add(String.join(File.pathSeparator, cp));
+        cmd.add(owner.getName());
+        cmd.addAll(args);
+        Path dir = null;
+        try {
+            dir = Files.createTempDirectory("gitlet-bench");
+            Process proc = new ProcessBuilder(cmd).directory(dir.toFile())
+                .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            List<String> lines = new ArrayList<>();
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                    proc.getInputStream(), StandardCharsets.UTF_8))) {
+                for (String line = in.readLine(); line != null;
+                     line = in.readLine()) {
+                    lines.add(line);
+                }
+            }
+            if (proc.waitFor() != 0) {
+                throw new IllegalStateException(owner.getSimpleName() + " "
+                        + String.join(" ", args) + " failed.");
+            }
+            return lines;
+        } catch (IOException | InterruptedException excp) {
+            throw new IllegalStateException(excp.getMessage());
+        } finally {
+            if (dir != null) {
+                delete(dir);
+            }
+        }
+    }
+
+    /**
+     * Do one run in this JVM, printing the score of each measured
+     * iteration on its own line.
+     * @param args is FORK, the benchmark, the warmup and measured
+     *             iterations, the seconds per iteration and each
+     *             parameter as NAME=VALUE.
+     */
+    private void forked(String... args) {
+        Spec spec = null;
+        for (Spec s : _specs) {
+            if (s._name.equals(args[1])) {
+                spec = s;
+            }
+        }
+        int warmups = Integer.parseInt(args[2]);
+        int iterations = Integer.parseInt(args[3]);
+        long nanos = (long) (Double.parseDouble(args[4]) * 1e9);
+        LinkedHashMap<String, String> params = new LinkedHashMap<>();
+        for (int i = 5; i < args.length; i += 1) {
+            String[] p = args[i].split("=", 2);
+            params.put(p[0], p[1]);
+        }
+        PrintStream results = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            Fixture f = spec._fixture.get();
+            f.setup(params);
+            for (int i = 0; i < warmups + iterations; i += 1) {
+                long timed = 0, calls = 0;
+                long end = System.nanoTime() + nanos * 10;
+                while (timed < nanos && System.nanoTime() < end
+                        || calls == 0) {
+                    f.prepare();
+                    long start = System.nanoTime();
+                    Object result = f.call();
+                    timed += System.nanoTime() - start;
+                    calls += 1;
+                    _sink ^= System.identityHashCode(result);
+                }
+                if (i >= warmups) {
+                    results.println(timed / 1e3 / calls);
+                }
+            }
+        } catch (Exception excp) {
+            excp.printStackTrace();
+            System.exit(1);
+        }
+        results.flush();
+    }
+
+    /**
+     * Print a line of the table and get the JSON of one run.
+     * @param spec is the benchmark.
+     * @param params is the parameters.
+     * @param scores is the score of each measured iteration.
+     * @return String.
+     */
+    private String report(Spec spec, Map<String, String> params,
+                          double[] scores) {
+        int n = scores.length;
+        double mean = 0, var = 0;
+        for (double s : scores) {
+            mean += s / n;
+        }
+        for (double s : scores) {
+            var += (s - mean) * (s - mean) / Math.max(1, n - 1);
+        }
+        double error = n > 1 ? student(n - 1) * Math.sqrt(var / n) : 0;
+        StringBuilder label = new StringBuilder(spec._name);
+        StringBuilder jsonParams = new StringBuilder();
+        for (Map.Entry<String, String> e : params.entrySet()) {
+            label.append(jsonParams.length() == 0 ? " (" : ", ")
+                .append(e.getKey()).append('=').append(e.getValue());
+            jsonParams.append(jsonParams.length() == 0 ? "" : ", ")
+                .append(quote(e.getKey())).append(": ")
+                .append(quote(e.getValue()));
+        }
+        if (!params.isEmpty()) {
+            label.append(')');
+        }
+        System.out.printf(Locale.ROOT, "%-40s %5d %12.3f %10.3f  us/op%n",
+                label, n, mean, error);
+        StringBuilder raw = new StringBuilder();
+        for (double s : scores) {
+            raw.append(raw.length() == 0 ? "" : ", ").append(num(s));
+        }
+        return String.format(Locale.ROOT, "  {%n"
+                + "    \"benchmark\": %s,%n"
+                + "    \"mode\": \"avgt\",%n"
+                + "    \"threads\": 1,%n"
+                + "    \"forks\": 1,%n"
+                + "    \"jdkVersion\": %s,%n"
+                + "    \"warmupIterations\": %d,%n"
+                + "    \"warmupTime\": \"%s s\",%n"
+                + "    \"measurementIterations\": %d,%n"
+                + "    \"measurementTime\": \"%s s\",%n"
+                + "    \"params\": {%s},%n"
+                + "    \"primaryMetric\": {%n"
+                + "      \"score\": %s,%n"
+                + "      \"scoreError\": %s,%n"
+                + "      \"scoreConfidence\": [%s, %s],%n"
+                + "      \"scoreUnit\": \"us/op\",%n"
+                + "      \"rawData\": [[%s]]%n"
+                + "    }%n"
+                + "  }",
+                quote(_owner.getName() + "." + spec._name),
+                quote(System.getProperty("java.version")), _warmups,
+                _seconds, _iterations, _seconds, jsonParams, num(mean),
+                num(error), num(mean - error), num(mean + error), raw);
+    }
+
+    /**
+     * Get the 99.9% two-sided quantile of Student's t distribution.
+     * @param df is the degrees of freedom.
+     * @return double.
+     */
+    private static double student(int df) {
+        final double[] t = {636.62, 31.599, 12.924, 8.610, 6.869, 5.959,
+                            5.408, 5.041, 4.781, 4.587, 4.437, 4.318,
+                            4.221, 4.140, 4.073};
+        return df <= t.length ? t[df - 1] : 3.291 + 6.0 / df;
+    }
+
+    /**
+     * Get every combination of the values of the parameters.
+     * @param space is the values of each parameter.
+     * @return List of maps from parameter to value.
+     */
+    private static List<LinkedHashMap<String, String>> product(
+            LinkedHashMap<String, String[]> space) {
+        List<LinkedHashMap<String, String>> result = new ArrayList<>();
+        result.add(new LinkedHashMap<>());
+        for (Map.Entry<String, String[]> e : space.entrySet()) {
+            List<LinkedHashMap<String, String>> next = new ArrayList<>();
+            for (LinkedHashMap<String, String> partial : result) {
+                for (String v : e.getValue()) {
+                    LinkedHashMap<String, String> p =
+                        new LinkedHashMap<>(partial);
+                    p.put(e.getKey(), v);
+                    next.add(p);
+                }
+            }
+            result = next;
+        }
+        return result;
+    }
+
+    /**
+     * Get the number as a JSON number.
+     * @param x is the number.
+     * @return String.
+     */
+    private static String num(double x) {
+        return Double.isFinite(x) ? String.format(Locale.ROOT, "%.6g", x)
+            : "\"NaN\"";
+    }
+
+    /**
+     * Get the string as a JSON string.
+     * @param s is the string.
+     * @return String.
+     */
+    private static String quote(String s) {
+        return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    /**
+     * Delete the directory and everything below it.
+     * @param dir is the directory.
+     */
+    private static void delete(Path dir) {
+        try (Stream<Path> walk = Files.walk(dir)) {
+            walk.sorted(Comparator.reverseOrder())
+                .forEach(p -> p.toFile().delete());
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** First argument of a forked JVM. */
+    private static final String FORK = "--fork";
+
+    /** Sink for results, so that the work is not optimized away. */
+    private static volatile int _sink;
+
+    /** The class whose main runs the harness. */
+    private final Class<?> _owner;
+
+    /** The benchmarks. */
+    private final Spec[] _specs;
+
+    /** Warmup iterations per run. */
+    private int _warmups = 2;
+
+    /** Measured iterations per run. */
+    private int _iterations = 3;
+
+    /** Seconds per iteration. */
+    private double _seconds = 0.5;
+}
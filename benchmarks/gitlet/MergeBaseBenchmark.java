@@ -0,0 +1,165 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * A benchmark for finding merge bases. It builds a synthetic history of
+ * several long-lived branches that merge into each other at random,
+ * including criss-cross merges, checks MergeBase against a brute-force
+ * answer on a smaller history, then times it against the first-parent
+ * list search it replaced.
+ * Usage: java gitlet.MergeBaseBenchmark [COMMITS [QUERIES]]
+ * @author Ting Qi
+ */
+class MergeBaseBenchmark {
+
+    /** Number of branches in the synthetic history. */
+    private static final int BRANCHES = 8;
+
+    /** Chance of a commit being a merge. */
+    private static final double MERGES = 0.2;
+
+    /**
+     * Run the benchmark.
+     * @param args is the number of commits and of queries.
+     */
+    public static void main(String[] args) {
+        int commits = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        Random random = new Random(61);
+
+        CommitGraph small = history(2000, random);
+        for (int q = 0; q < 500; q += 1) {
+            int a = random.nextInt(small.size());
+            int b = random.nextInt(small.size());
+            check(small, a, b);
+        }
+        System.out.println("checked 500 pairs on 2000 commits");
+
+        CommitGraph g = history(commits, random);
+        int[] a = new int[queries], b = new int[queries];
+        for (int q = 0; q < queries; q += 1) {
+            a[q] = g.size() - 1 - random.nextInt(BRANCHES * 4);
+            b[q] = g.size() - 1 - random.nextInt(g.size() / 2);
+        }
+        long start = System.nanoTime();
+        int multiple = 0;
+        for (int q = 0; q < queries; q += 1) {
+            if (MergeBase.bases(g, a[q], b[q]).length > 1) {
+                multiple += 1;
+            }
+        }
+        long bases = System.nanoTime() - start;
+        int naive = Math.min(queries, 20);
+        start = System.nanoTime();
+        for (int q = 0; q < naive; q += 1) {
+            firstParent(g, a[q], b[q]);
+        }
+        long list = System.nanoTime() - start;
+        System.out.printf("%d commits, %d queries (%d criss-cross)%n",
+                g.size(), queries, multiple);
+        System.out.printf("MergeBase.bases: %.3f ms/query%n",
+                bases / 1e6 / queries);
+        System.out.printf("first-parent list: %.3f ms/query%n",
+                list / 1e6 / naive);
+    }
+
+    /**
+     * Build a synthetic history of N commits over BRANCHES branches.
+     * @param n is the number of commits.
+     * @param random is the source of randomness.
+     * @return CommitGraph.
+     */
+    private static CommitGraph history(int n, Random random) {
+        CommitGraph g = new CommitGraph();
+        int[] heads = new int[BRANCHES];
+        heads[0] = g.add("c0", CommitGraph.NONE, CommitGraph.NONE, 0);
+        for (int i = 1; i < BRANCHES; i += 1) {
+            heads[i] = heads[0];
+        }
+        for (int k = 1; k < n; k += 1) {
+            int br = random.nextInt(BRANCHES);
+            int p2 = CommitGraph.NONE;
+            if (random.nextDouble() < MERGES) {
+                int other = random.nextInt(BRANCHES);
+                if (heads[other] != heads[br]) {
+                    p2 = heads[other];
+                }
+            }
+            heads[br] = g.add("c" + k, heads[br], p2, k);
+        }
+        return g;
+    }
+
+    /**
+     * Check the merge bases of A and B against the common ancestors
+     * found by marking every ancestor of each.
+     * @param g is the commit graph.
+     * @param a is the first commit.
+     * @param b is the second commit.
+     */
+    private static void check(CommitGraph g, int a, int b) {
+        BitSet common = ancestors(g, a);
+        common.and(ancestors(g, b));
+        BitSet best = (BitSet) common.clone();
+        for (int k = common.nextSetBit(0); k >= 0;
+             k = common.nextSetBit(k + 1)) {
+            BitSet below = ancestors(g, k);
+            below.clear(k);
+            best.andNot(below);
+        }
+        BitSet found = new BitSet();
+        for (int k : MergeBase.bases(g, a, b)) {
+            found.set(k);
+        }
+        if (!found.equals(best)) {
+            throw new AssertionError("bases of " + a + " and " + b
+                    + ": expected " + best + ", got " + found);
+        }
+    }
+
+    /**
+     * Get every ancestor of K, including itself.
+     * @param g is the commit graph.
+     * @param k is the commit.
+     * @return BitSet.
+     */
+    private static BitSet ancestors(CommitGraph g, int k) {
+        BitSet result = new BitSet();
+        result.set(k);
+        for (int i = k; i >= 0; i -= 1) {
+            if (result.get(i)) {
+                if (g.parent(i) != CommitGraph.NONE) {
+                    result.set(g.parent(i));
+                }
+                if (g.parent2(i) != CommitGraph.NONE) {
+                    result.set(g.parent2(i));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Find the split point the way merge used to: list the first-parent
+     * ancestors of A, then walk those of B until one is in the list.
+     * @param g is the commit graph.
+     * @param a is the first commit.
+     * @param b is the second commit.
+     * @return int.
+     */
+    private static int firstParent(CommitGraph g, int a, int b) {
+        ArrayList<String> past = new ArrayList<>();
+        for (int k = a; k != CommitGraph.NONE; k = g.parent(k)) {
+            past.add(g.id(k));
+        }
+        for (int k = b; k != CommitGraph.NONE; k = g.parent(k)) {
+            if (past.contains(g.id(k))) {
+                return k;
+            }
+        }
+        return CommitGraph.NONE;
+    }
+}
@@ -0,0 +1,249 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A generator of synthetic repositories. It writes FILES files of SIZE
+ * bytes in directories of 50, commits them, then makes DEPTH more
+ * commits spread at random over master and BRANCHES other branches,
+ * each changing a few of the files that belong to its branch, and after
+ * a commit on another branch merges it into master with chance MERGES.
+ * Everything but commit ids and times follows from SEED, so the same
+ * options always give the same contents, history shape and messages.
+ * Commands run in this JVM through Main.run, one at a time, as they
+ * would from the shell, so many commits are made in the same second,
+ * merges of one branch with the same message. After the history is made
+ * the generator checks that every commit and merge it expects is in the
+ * repository and that the working tree is clean, so a timed repository
+ * is never smaller than asked for.
+ * Usage: java gitlet.RepoGenerator [-files N] [-size BYTES] [-depth N]
+ *        [-branches N] [-merges P] [-seed N], in an empty directory.
+ * @author Ting Qi
+ */
+class RepoGenerator {
+
+    /** Files in one directory. */
+    private static final int FANOUT = 50;
+
+    /** Files changed by one commit. */
+    private static final int CHANGES = 3;
+
+    /**
+     * Generate a repository in the working directory.
+     * @param args is the options.
+     */
+    public static void main(String... args) {
+        RepoGenerator gen = new RepoGenerator();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            gen.option(args[i], args[i + 1]);
+        }
+        if (new File(".gitlet").exists()) {
+            System.out.println("A Gitlet version-control system already "
+                    + "exists in the current directory.");
+            return;
+        }
+        gen.files();
+        run("init");
+        run("add", "src");
+        run("commit", "initial files");
+        gen.history();
+        System.out.printf("%d files, %d commits (%d merges), %d branches%n",
+                gen._files, gen._commits, gen._merged, gen._branches + 1);
+    }
+
+    /**
+     * Set an option.
+     * @param name is the option, such as "-files".
+     * @param value is its value.
+     */
+    void option(String name, String value) {
+        switch (name) {
+        case "-files":
+            _files = Integer.parseInt(value);
+            break;
+        case "-size":
+            _size = Integer.parseInt(value);
+            break;
+        case "-depth":
+            _depth = Integer.parseInt(value);
+            break;
+        case "-branches":
+            _branches = Integer.parseInt(value);
+            break;
+        case "-merges":
+            _merges = Double.parseDouble(value);
+            break;
+        case "-seed":
+            _seed = Long.parseLong(value);
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown option " + name);
+        }
+    }
+
+    /**
+     * Write the working files, all under src.
+     * @return their names.
+     */
+    List<String> files() {
+        _random = new Random(_seed);
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < _files; i += 1) {
+            String name = name(i);
+            File f = new File(name);
+            f.getParentFile().mkdirs();
+            Utils.writeContents(f, contents(_size));
+            names.add(name);
+        }
+        return names;
+    }
+
+    /** Make the branches and DEPTH commits on them, ending on master,
+     *  after the initial commit and the commit of the files, then check
+     *  the result. */
+    void history() {
+        _commits = 2;
+        _merged = 0;
+        for (int b = 1; b <= _branches; b += 1) {
+            run("branch", branch(b));
+        }
+        int current = 0;
+        for (int c = 0; c < _depth; c += 1) {
+            int b = _random.nextInt(_branches + 1);
+            if (b != current) {
+                run("checkout", branch(b));
+                current = b;
+            }
+            boolean changed = false;
+            for (int k = 0; k < CHANGES; k += 1) {
+                int i = _random.nextInt(Math.max(1, _files / (_branches + 1)))
+                    * (_branches + 1) + b;
+                if (i < _files) {
+                    Utils.writeContents(new File(name(i)), contents(_size));
+                    run("add", name(i));
+                    changed = true;
+                }
+            }
+            run("commit", "change " + c + " on " + branch(b));
+            if (changed) {
+                _commits += 1;
+            }
+            if (b != 0 && _random.nextDouble() < _merges) {
+                run("checkout", branch(0));
+                current = 0;
+                if (diverged(branch(0), branch(b))) {
+                    _commits += 1;
+                    _merged += 1;
+                }
+                run("merge", branch(b));
+            }
+        }
+        if (current != 0) {
+            run("checkout", branch(0));
+        }
+        check();
+    }
+
+    /**
+     * Check if neither branch is an ancestor of the other, so that
+     * merging them makes a commit.
+     * @param b1 is a branch.
+     * @param b2 is another branch.
+     * @return boolean.
+     */
+    static boolean diverged(String b1, String b2) {
+        CommitGraph g = CommitGraph.read();
+        int k1 = g.position(Refs.read(b1)), k2 = g.position(Refs.read(b2));
+        return !MergeBase.isAncestor(g, k1, k2)
+            && !MergeBase.isAncestor(g, k2, k1);
+    }
+
+    /** Check that the repository has every commit made and that nothing
+     *  is staged, changed or untracked. */
+    void check() {
+        int found = ObjectStore.commits().size();
+        if (found != _commits) {
+            throw new AssertionError(String.format(
+                    "expected %d commits, found %d", _commits, found));
+        }
+        Repo repo = new Repo();
+        StatusScan scan = new StatusScan(repo);
+        if (!repo.stage().getFile().isEmpty()
+                || !repo.removed().getfile().isEmpty()
+                || !scan.modified().isEmpty()
+                || !scan.untracked().isEmpty()) {
+            throw new AssertionError("working tree not clean: "
+                    + scan.modified() + " " + scan.untracked());
+        }
+    }
+
+    /**
+     * Run a command as Main would.
+     * @param args is the command and its operands.
+     */
+    static void run(String... args) {
+        Main.run(args);
+    }
+
+    /**
+     * Get the name of a branch.
+     * @param b is its number, 0 for master.
+     * @return String.
+     */
+    static String branch(int b) {
+        return b == 0 ? "master" : "b" + b;
+    }
+
+    /**
+     * Get the name of the Ith file.
+     * @param i is its number.
+     * @return String.
+     */
+    static String name(int i) {
+        return "src/d" + i / FANOUT + "/f" + i + ".txt";
+    }
+
+    /**
+     * Get lines of random text.
+     * @param size is the number of bytes.
+     * @return byte[].
+     */
+    private byte[] contents(int size) {
+        byte[] b = new byte[size];
+        for (int k = 0; k < size; k += 1) {
+            b[k] = k % 64 == 63 ? (byte) '\n'
+                : (byte) ('a' + _random.nextInt(26));
+        }
+        return b;
+    }
+
+    /** Number of files. */
+    private int _files = 1000;
+
+    /** Bytes per file. */
+    private int _size = 1024;
+
+    /** Commits after the first. */
+    private int _depth = 100;
+
+    /** Branches besides master. */
+    private int _branches = 4;
+
+    /** Chance of merging a branch into master after committing on it. */
+    private double _merges = 0.2;
+
+    /** Seed of the random choices and contents. */
+    private long _seed = 22;
+
+    /** The random choices and contents. */
+    private Random _random;
+
+    /** Commits made so far. */
+    private int _commits;
+
+    /** Merge commits made so far. */
+    private int _merged;
+}
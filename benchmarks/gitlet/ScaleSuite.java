@@ -0,0 +1,238 @@
+package gitlet;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * An end-to-end scale suite. For each repository size it generates a
+ * repository with RepoGenerator, with history depth and branch count
+ * growing with the number of files, in a new JVM and an empty directory,
+ * and times each command on it: init, add and commit of every file
+ * while generating, then status, log, global-log, find, checkout of a
+ * file and of a branch, reset, merge, and an add and commit of a few
+ * changed files. Commands that can be repeated or undone are timed as
+ * the best of three runs. It prints a table of the times, and the growth
+ * exponent of each command, the slope of log time against log size over
+ * all sizes: about 1 for a command linear in the size of the repository,
+ * 0 for one that does not depend on it.
+ * A command growing faster than LIMIT is marked, and with -check makes
+ * the suite exit with status 1.
+ * Usage: java gitlet.ScaleSuite [-files N1,N2...] [-size BYTES]
+ *        [-limit X] [-check]
+ * @author Ting Qi
+ */
+class ScaleSuite {
+
+    /** First argument of a forked JVM. */
+    private static final String FORK = "--fork";
+
+    /** Commits generated per file. */
+    private static final double DEPTH = 0.05;
+
+    /** Files per branch besides master. */
+    private static final int PER_BRANCH = 500;
+
+    /** Runs of a command, of which the best is kept. */
+    private static final int RUNS = 3;
+
+    /** Times below this many milliseconds count as this many in the
+     *  growth exponent. */
+    private static final double FLOOR = 0.1;
+
+    /**
+     * Run the suite.
+     * @param args is the options.
+     */
+    public static void main(String... args) {
+        if (args.length > 0 && args[0].equals(FORK)) {
+            forked(Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+            return;
+        }
+        int[] sizes = {1000, 2000, 4000, 8000};
+        int size = 1024;
+        double limit = 1.3;
+        boolean check = false;
+        for (int i = 0; i < args.length; i += 1) {
+            switch (args[i]) {
+            case "-files":
+                sizes = Arrays.stream(args[++i].split(","))
+                    .mapToInt(Integer::parseInt).toArray();
+                break;
+            case "-size":
+                size = Integer.parseInt(args[++i]);
+                break;
+            case "-limit":
+                limit = Double.parseDouble(args[++i]);
+                break;
+            case "-check":
+                check = true;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option "
+                        + args[i]);
+            }
+        }
+        LinkedHashMap<String, double[]> times = new LinkedHashMap<>();
+        for (int s = 0; s < sizes.length; s += 1) {
+            for (String line : Harness.fork(ScaleSuite.class, List.of(FORK,
+                    Integer.toString(sizes[s]), Integer.toString(size)))) {
+                String[] f = line.split(" ");
+                times.putIfAbsent(f[0], new double[sizes.length]);
+                times.get(f[0])[s] = Double.parseDouble(f[1]);
+            }
+        }
+        System.out.printf("%-16s", "files");
+        for (int n : sizes) {
+            System.out.printf("%10d", n);
+        }
+        System.out.printf("%10s%n", "growth");
+        boolean failed = false;
+        for (Map.Entry<String, double[]> e : times.entrySet()) {
+            double[] t = e.getValue();
+            System.out.printf("%-16s", e.getKey());
+            for (double x : t) {
+                System.out.printf(Locale.ROOT, "%8.1fms", x);
+            }
+            if (sizes.length > 1) {
+                double growth = slope(sizes, t);
+                boolean over = growth > limit;
+                failed |= over;
+                System.out.printf(Locale.ROOT, "%10.2f%s", growth,
+                        over ? " *" : "");
+            }
+            System.out.println();
+        }
+        if (failed) {
+            System.out.printf("* grows faster than n^%.2f%n", limit);
+            if (check) {
+                System.exit(1);
+            }
+        }
+    }
+
+    /**
+     * Generate a repository of N files in the working directory and time
+     * each command on it, printing "command milliseconds" lines.
+     * @param n is the number of files.
+     * @param size is the size of each file.
+     */
+    private static void forked(int n, int size) {
+        PrintStream results = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        LinkedHashMap<String, Double> times = new LinkedHashMap<>();
+        RepoGenerator gen = new RepoGenerator();
+        gen.option("-files", Integer.toString(n));
+        gen.option("-size", Integer.toString(size));
+        gen.option("-depth", Integer.toString((int) (n * DEPTH)));
+        gen.option("-branches",
+                Integer.toString(Math.max(1, n / PER_BRANCH)));
+        List<String> names = gen.files();
+        times.put("init", time(1, "init"));
+        times.put("add", time(1, "add", "src"));
+        times.put("commit", time(1, "commit", "initial files"));
+        String first = Refs.read("master");
+        gen.history();
+        String head = Refs.read("master");
+
+        List<String> changed = new ArrayList<>();
+        for (int i = 0; i < names.size(); i += 100) {
+            Utils.writeContents(new File(names.get(i)), "changed\n");
+            changed.add(names.get(i));
+        }
+        times.put("status", time(RUNS, "status"));
+        times.put("log", time(RUNS, "log"));
+        times.put("global-log", time(RUNS, "global-log"));
+        times.put("find", time(RUNS, "find", "initial files"));
+        for (String name : changed) {
+            RepoGenerator.run("checkout", "--", name);
+        }
+        times.put("checkout-file", time(RUNS, "checkout", "--",
+                changed.get(0)));
+        times.put("checkout", time(RUNS,
+                new String[] {"checkout", RepoGenerator.branch(1)},
+                "checkout", RepoGenerator.branch(0)));
+        RepoGenerator.run("checkout", RepoGenerator.branch(1));
+        Utils.writeContents(new File(RepoGenerator.name(1)), "merge\n");
+        RepoGenerator.run("add", RepoGenerator.name(1));
+        RepoGenerator.run("commit", "to merge");
+        RepoGenerator.run("checkout", RepoGenerator.branch(0));
+        times.put("reset", time(RUNS, new String[] {"reset", first},
+                "reset", head));
+        times.put("merge", time(1, "merge", RepoGenerator.branch(1)));
+
+        List<String> add = new ArrayList<>(List.of("add"));
+        for (String name : changed) {
+            Utils.writeContents(new File(name), "changed again\n");
+            add.add(name);
+        }
+        times.put("add-changed", time(1, add.toArray(new String[0])));
+        times.put("commit-changed", time(1, "commit", "changed"));
+        for (Map.Entry<String, Double> e : times.entrySet()) {
+            results.printf(Locale.ROOT, "%s %.3f%n", e.getKey(),
+                    e.getValue());
+        }
+        results.flush();
+    }
+
+    /**
+     * Get the slope of the least-squares line through the logarithms of
+     * the times against those of the sizes.
+     * @param sizes is the sizes.
+     * @param times is the time at each size.
+     * @return double.
+     */
+    private static double slope(int[] sizes, double[] times) {
+        int n = sizes.length;
+        double mx = 0, my = 0;
+        for (int i = 0; i < n; i += 1) {
+            mx += Math.log(sizes[i]) / n;
+            my += Math.log(Math.max(times[i], FLOOR)) / n;
+        }
+        double sxy = 0, sxx = 0;
+        for (int i = 0; i < n; i += 1) {
+            double dx = Math.log(sizes[i]) - mx;
+            sxy += dx * (Math.log(Math.max(times[i], FLOOR)) - my);
+            sxx += dx * dx;
+        }
+        return sxy / sxx;
+    }
+
+    /**
+     * Time a command that is undone by another, untimed, between runs.
+     * @param runs is the number of runs, of which the best is kept.
+     * @param args is the command and its operands.
+     * @param undo is the command undoing it.
+     * @return the time in milliseconds.
+     */
+    private static double time(int runs, String[] args, String... undo) {
+        double best = Double.MAX_VALUE;
+        for (int r = 0; r < runs; r += 1) {
+            best = Math.min(best, time(1, args));
+            RepoGenerator.run(undo);
+        }
+        return best;
+    }
+
+    /**
+     * Time a command as Main would run it.
+     * @param runs is the number of runs, of which the best is kept.
+     * @param args is the command and its operands.
+     * @return the time in milliseconds.
+     */
+    private static double time(int runs, String... args) {
+        double best = Double.MAX_VALUE;
+        for (int r = 0; r < runs; r += 1) {
+            long start = System.nanoTime();
+            RepoGenerator.run(args);
+            best = Math.min(best, (System.nanoTime() - start) / 1e6);
+        }
+        return best;
+    }
+}
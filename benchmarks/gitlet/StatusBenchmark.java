@@ -0,0 +1,99 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A benchmark for the status scan. It fills the current directory, which
+ * must be empty, with a tree of files, commits them all, changes a few,
+ * then times StatusScan with a growing number of threads, both with the
+ * stat cache of the index cleared and with it filled.
+ * Usage: java gitlet.StatusBenchmark [FILES [RUNS]]
+ * @author Ting Qi
+ */
+class StatusBenchmark {
+
+    /** Most files in one directory. */
+    private static final int FANOUT = 100;
+
+    /** Share of files changed after the commit. */
+    private static final double CHANGED = 0.01;
+
+    /** Age given to the files, so the index caches their stat data. */
+    private static final long AGE = 3600 * 1000;
+
+    /**
+     * Run the benchmark.
+     * @param args is the number of files and of runs per thread count.
+     */
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        String[] listing = new File(".").list();
+        if (listing == null || listing.length > 0) {
+            System.out.println("Run in an empty directory.");
+            return;
+        }
+        Random random = new Random(18);
+        long old = System.currentTimeMillis() - AGE;
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < n; i += 1) {
+            String name = path(i);
+            File f = new File(name);
+            f.getParentFile().mkdirs();
+            Utils.writeContents(f, "file " + i + " " + random.nextLong()
+                    + "\n");
+            f.setLastModified(old);
+            names.add(name);
+        }
+        Commands c = new Commands();
+        c.init();
+        long start = System.nanoTime();
+        c.add(names.toArray(new String[0]));
+        c.commit("files");
+        System.out.printf("%d files committed in %.0f ms%n", n,
+                (System.nanoTime() - start) / 1e6);
+        byte[] index = Utils.readContents(new File(Stage.INDEX));
+        for (int i = 0; i < n * CHANGED; i += 1) {
+            File f = new File(names.get(random.nextInt(n)));
+            Utils.writeContents(f, "changed " + i + "\n");
+            f.setLastModified(old + 1000);
+        }
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        int modified = -1;
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            double cold = Double.MAX_VALUE, warm = Double.MAX_VALUE;
+            for (int r = 0; r < runs; r += 1) {
+                new Stage().write();
+                start = System.nanoTime();
+                new StatusScan(new Repo(), threads);
+                cold = Math.min(cold, (System.nanoTime() - start) / 1e6);
+                Utils.writeContents(new File(Stage.INDEX), index);
+                start = System.nanoTime();
+                StatusScan scan = new StatusScan(new Repo(), threads);
+                warm = Math.min(warm, (System.nanoTime() - start) / 1e6);
+                modified = scan.modified().size();
+            }
+            System.out.printf("%2d threads: cold %8.1f ms, warm %8.1f ms%n",
+                    threads, cold, warm);
+        }
+        System.out.printf("%d files modified of %d%n", modified, n);
+    }
+
+    /**
+     * Get the path of the Ith file, FANOUT files to a directory and
+     * FANOUT directories to a parent.
+     * @param i is the index of the file.
+     * @return String.
+     */
+    private static String path(int i) {
+        StringBuilder path = new StringBuilder("f" + i % FANOUT);
+        for (i /= FANOUT; i > 0; i /= FANOUT) {
+            path.insert(0, "d" + i % FANOUT + "/");
+        }
+        return "d/" + path;
+    }
+}
@@ -0,0 +1,106 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static gitlet.Utils.*;
+
+/**
+ * A class for running a script of commands in one JVM. Each line is one
+ * command with its operands, as they would be passed to Main; an operand
+ * with spaces is written in double quotes, with \" and \\ inside them
+ * standing for a quote and a backslash. Blank lines and lines starting
+ * with # are skipped. Every command runs on the same Commands, so the
+ * head commit, the stage and the removal list are read once and kept up
+ * to date by the commands themselves, and everything printed goes
+ * through one buffered stream. A command that fails has its error
+ * printed, as Main does, and its changes undone; the state read by then
+ * is dropped, to be read again from disk, and the batch goes on with
+ * the next line.
+ * @author Ting Qi
+ */
+class Batch {
+
+    /**
+     * Run every command in the script.
+     * @param source is the script file, or "-" for standard input.
+     */
+    static void run(String source) {
+        PrintStream stdout = System.out;
+        PrintStream out = new PrintStream(
+                new BufferedOutputStream(stdout, Utils.CHUNK_SIZE), false);
+        System.setOut(out);
+        Commands cmd = new Commands();
+        try (BufferedReader in = source.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in,
+                        StandardCharsets.UTF_8))
+                : Files.newBufferedReader(join(source).toPath(),
+                        StandardCharsets.UTF_8)) {
+            for (String line = in.readLine(); line != null;
+                 line = in.readLine()) {
+                List<String> args = split(line);
+                if (args.isEmpty() || args.get(0).startsWith("#")) {
+                    continue;
+                } else if (args.get(0).equals("batch")) {
+                    System.out.println("Cannot run a batch in a batch.");
+                    continue;
+                }
+                try {
+                    if (!Main.run(cmd, args.toArray(new String[0]))) {
+                        cmd = new Commands();
+                    }
+                } catch (RuntimeException excp) {
+                    Main.report(excp);
+                    cmd = new Commands();
+                }
+            }
+            cmd.close();
+        } catch (IOException excp) {
+            System.out.println("Cannot read " + source + ".");
+        } finally {
+            out.flush();
+            System.setOut(stdout);
+        }
+    }
+
+    /**
+     * Split the line into arguments at spaces outside double quotes.
+     * @param line is the line.
+     * @return List.
+     */
+    static List<String> split(String line) {
+        List<String> args = new ArrayList<>();
+        StringBuilder arg = new StringBuilder();
+        boolean inArg = false, quoted = false;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            if (quoted && c == '\\' && i + 1 < line.length()) {
+                i += 1;
+                arg.append(line.charAt(i));
+            } else if (c == '"') {
+                quoted = !quoted;
+                inArg = true;
+            } else if (!quoted && Character.isWhitespace(c)) {
+                if (inArg) {
+                    args.add(arg.toString());
+                    arg.setLength(0);
+                    inArg = false;
+                }
+            } else {
+                arg.append(c);
+                inArg = true;
+            }
+        }
+        if (inArg) {
+            args.add(arg.toString());
+        }
+        return args;
+    }
+}
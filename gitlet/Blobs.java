@@ -1,30 +1,120 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
-import java.io.Serializable;
-
-import static gitlet.Utils.readContents;
-import static gitlet.Utils.sha1;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 /**
- * A class for blobs and storing blobs contents.
+ * A class for blobs and storing blobs contents. A stored blob is one
+ * byte giving its format followed by the zlib-compressed contents of the
+ * file, by the id of a base blob, the length of the delta chain and the
+ * zlib-compressed delta against that base, or, for very large files, by
+ * the raw contents. Full contents are hashed and copied in chunks, so a
+ * file is never held on the heap as a whole.
  * @author Ting Qi
  */
-public class Blobs implements Serializable {
+public class Blobs {
 
-    /**file content.*/
-    private byte[] _blob;
+    /** Format byte of a blob stored uncompressed. */
+    static final int STORED = 0;
 
-    /**file name.*/
-    private String _name;
+    /** Format byte of a blob stored with deflate. */
+    static final int DEFLATED = 1;
+
+    /** Format byte of a blob stored as a delta against another blob. */
+    static final int DELTA = 2;
+
+    /** First byte of a blob written by Java serialization. */
+    private static final int SERIALIZED = 0xac;
+
+    /** Size of the chunks files are copied in. */
+    private static final int CHUNK = Utils.CHUNK_SIZE;
+
+    /** Smallest file stored uncompressed. */
+    private static final long MIN_STORED_SIZE = 64 << 20;
+
+    /** Largest file stored as a delta. */
+    private static final long MAX_DELTA_SIZE = 8 << 20;
+
+    /** Longest chain of deltas leading to a full blob. */
+    private static final int MAX_CHAIN = 16;
+
+    /** Bytes of reconstructed contents kept in the cache. */
+    private static final long CACHE_BYTES = 64 << 20;
+
+    /**
+     * Blobs constructor. Hashes FILE and writes its compressed contents
+     * into DIR under the name of its hash.
+     * @param file is the file.
+     * @param dir is the directory the blob is written to.
+     */
+    public Blobs(File file, File dir) {
+        this(file, dir, null);
+    }
 
     /**
-     * Blobs constructor.
+     * Blobs constructor. Hashes FILE and writes it into DIR under the
+     * name of its hash, as a delta against the blob BASE when that is
+     * much smaller than the file. Both the file and BASE must be at most
+     * MAX_DELTA_SIZE bytes, since both are read whole.
      * @param file is the file.
+     * @param dir is the directory the blob is written to.
+     * @param base is the id of the previous version, or null.
      */
-    public Blobs(File file) {
-        _blob = readContents(file);
-        _name = sha1(_blob);
+    public Blobs(File file, File dir, String base) {
+        long start = Trace.start();
+        File tmp = null;
+        try {
+            tmp = File.createTempFile("tmp-", null, dir);
+            if (base != null && file.length() <= MAX_DELTA_SIZE
+                    && depth(base) < MAX_CHAIN && small(base)) {
+                byte[] target = Utils.readContents(file);
+                byte[] delta = Delta.create(contents(base), target);
+                _name = Utils.sha1(target);
+                if (delta.length < target.length / 2
+                        && !_name.equals(base)) {
+                    writeDelta(tmp, base, depth(base) + 1, delta);
+                } else {
+                    _name = writeFull(tmp,
+                            new ByteArrayInputStream(target));
+                }
+            } else if (file.length() >= MIN_STORED_SIZE) {
+                _name = writeStored(tmp, file);
+            } else {
+                try (InputStream in = new FileInputStream(file)) {
+                    _name = writeFull(tmp, in);
+                }
+            }
+            Files.move(tmp.toPath(), new File(dir, _name).toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            Transaction.sync(new File(dir, _name));
+            Trace.end(Trace.BLOB_STORE, start,
+                    Trace.on() ? file.length() : 0);
+        } catch (IOException excp) {
+            if (tmp != null) {
+                tmp.delete();
+            }
+            throw new IllegalArgumentException(excp.getMessage());
+        }
     }
 
     /**
@@ -36,10 +126,260 @@ public class Blobs implements Serializable {
     }
 
     /**
-     * Get the blob.
+     * Write the contents of IN, compressed, to the file.
+     * @param file is the file.
+     * @param in is the contents.
+     * @return the sha1 of the contents.
+     * @throws IOException if the file cannot be written.
+     */
+    private static String writeFull(File file, InputStream in)
+        throws IOException {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try (OutputStream out = new BufferedOutputStream(
+                Files.newOutputStream(file.toPath()))) {
+            MessageDigest md = Utils.digest();
+            byte[] buf = new byte[CHUNK];
+            out.write(DEFLATED);
+            DeflaterOutputStream z =
+                new DeflaterOutputStream(out, deflater, CHUNK);
+            for (int n = in.read(buf); n > 0; n = in.read(buf)) {
+                md.update(buf, 0, n);
+                z.write(buf, 0, n);
+            }
+            z.finish();
+            return Utils.hex(md.digest());
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Copy SRC uncompressed to the file through a direct buffer, hashing
+     * each chunk on the way.
+     * @param file is the file.
+     * @param src is the file being stored.
+     * @return the sha1 of the contents.
+     * @throws IOException if the file cannot be written.
+     */
+    private static String writeStored(File file, File src)
+        throws IOException {
+        MessageDigest md = Utils.digest();
+        ByteBuffer buf = Utils.buffer();
+        try (FileChannel in = FileChannel.open(src.toPath());
+             FileChannel out = FileChannel.open(file.toPath(),
+                 StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            out.write(ByteBuffer.wrap(new byte[] {STORED}));
+            while (in.read(buf) >= 0) {
+                buf.flip();
+                buf.mark();
+                md.update(buf);
+                buf.reset();
+                while (buf.hasRemaining()) {
+                    out.write(buf);
+                }
+                buf.clear();
+            }
+        }
+        return Utils.hex(md.digest());
+    }
+
+    /**
+     * Write the delta against BASE, compressed, to the file.
+     * @param file is the file.
+     * @param base is the id of the base blob.
+     * @param depth is the length of the chain ending in this delta.
+     * @param delta is the delta.
+     * @throws IOException if the file cannot be written.
+     */
+    private static void writeDelta(File file, String base, int depth,
+                                   byte[] delta) throws IOException {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(
+                        Files.newOutputStream(file.toPath())))) {
+            out.write(DELTA);
+            out.writeUTF(base);
+            out.write(depth);
+            DeflaterOutputStream z = new DeflaterOutputStream(out, deflater);
+            z.write(delta);
+            z.finish();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Write the contents of the blob to the file, creating its directory
+     * if needed. Uncompressed blobs are copied channel to channel.
+     * @param id is the blob id.
+     * @param file is the file.
+     */
+    static void write(String id, File file) {
+        long start = Trace.start();
+        writeBlob(id, file);
+        Trace.end(Trace.BLOB_WRITE, start, Trace.on() ? file.length() : 0);
+    }
+
+    /**
+     * Write the contents of the blob to the file.
+     * @param id is the blob id.
+     * @param file is the file.
+     */
+    private static void writeBlob(String id, File file) {
+        File src = ObjectStore.file(id);
+        ByteBuffer packed = src.isFile() ? null : Pack.lookup(id);
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        try (FileChannel out = FileChannel.open(file.toPath(),
+                 StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (packed != null && packed.get(0) == STORED) {
+                packed.position(1);
+                while (packed.hasRemaining()) {
+                    out.write(packed);
+                }
+                return;
+            } else if (src.isFile()) {
+                try (FileChannel in = FileChannel.open(src.toPath())) {
+                    ByteBuffer format = ByteBuffer.allocate(1);
+                    in.read(format, 0);
+                    if (format.get(0) == STORED) {
+                        long n = in.size();
+                        for (long done = 1; done < n;) {
+                            done += in.transferTo(done, n - done, out);
+                        }
+                        return;
+                    }
+                }
+            }
+            OutputStream str = new BufferedOutputStream(
+                    Channels.newOutputStream(out), CHUNK);
+            copy(id, str);
+            str.flush();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Copy the contents of the blob to the stream.
+     * @param id is the blob id.
+     * @param out is the stream.
+     */
+    static void copy(String id, OutputStream out) {
+        Inflater inflater = new Inflater();
+        try (InputStream in = ObjectStore.open(id)) {
+            int format = in.read();
+            if (format == DELTA || format == SERIALIZED) {
+                out.write(contents(id));
+            } else if (format == STORED) {
+                in.transferTo(out);
+            } else if (format == DEFLATED) {
+                new InflaterInputStream(in, inflater, CHUNK).transferTo(out);
+            } else {
+                throw Utils.error("Unknown blob format %d.", format);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Get the whole contents of the blob, rebuilding it from its delta
+     * chain if needed. Recently rebuilt blobs are cached.
+     * @param id is the blob id.
      * @return byte[].
      */
-    public byte[] getBlob() {
-        return _blob;
+    static byte[] contents(String id) {
+        byte[] result = CACHE.get(id);
+        if (result != null) {
+            return result;
+        }
+        Inflater inflater = new Inflater();
+        try (DataInputStream in = new DataInputStream(ObjectStore.open(id))) {
+            int format = in.read();
+            if (format == DELTA) {
+                String base = in.readUTF();
+                in.read();
+                byte[] delta = new InflaterInputStream(in, inflater)
+                        .readAllBytes();
+                result = Delta.apply(contents(base), delta);
+            } else if (format == STORED) {
+                result = in.readAllBytes();
+            } else if (format == DEFLATED) {
+                result = new InflaterInputStream(in, inflater, CHUNK)
+                        .readAllBytes();
+            } else if (format == SERIALIZED) {
+                result = Codec.legacyBlob(new SequenceInputStream(
+                        new ByteArrayInputStream(new byte[] {(byte) format}),
+                        in));
+            } else {
+                throw Utils.error("Unknown blob format %d.", format);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            inflater.end();
+        }
+        CACHE.put(id, result);
+        return result;
     }
+
+    /**
+     * Get the length of the delta chain ending in the blob.
+     * @param id is the blob id.
+     * @return int, which is 0 for a full blob.
+     */
+    private static int depth(String id) {
+        try (DataInputStream in = new DataInputStream(ObjectStore.open(id))) {
+            if (in.read() != DELTA) {
+                return 0;
+            }
+            in.readUTF();
+            return in.read();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Check if the contents of the blob are at most MAX_DELTA_SIZE bytes,
+     * reading no more than that much of them. A delta is only ever made
+     * for contents that small.
+     * @param id is the blob id.
+     * @return boolean.
+     */
+    private static boolean small(String id) {
+        Inflater inflater = new Inflater();
+        try (InputStream in = ObjectStore.open(id)) {
+            int format = in.read();
+            if (format == DELTA) {
+                return true;
+            }
+            InputStream contents = format == DEFLATED
+                ? new InflaterInputStream(in, inflater, CHUNK) : in;
+            byte[] buf = new byte[CHUNK];
+            for (long n = 0; n <= MAX_DELTA_SIZE;) {
+                int k = contents.read(buf);
+                if (k < 0) {
+                    return true;
+                }
+                n += k;
+            }
+            return false;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /** Rebuilt contents of recently read blobs. */
+    private static final ObjectCache<byte[]> CACHE =
+        new ObjectCache<>("blobs", CACHE_BYTES, b -> b.length);
+
+    /** File name: the sha1 of the contents.*/
+    private String _name;
 }
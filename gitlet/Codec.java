@@ -0,0 +1,298 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+import static gitlet.Utils.*;
+
+/**
+ * A class for the binary format of commits, trees and removal lists. An
+ * encoded object starts with a magic number, a type byte and a format
+ * version, followed by its fields as varints and length-prefixed UTF-8
+ * strings. Objects written by Java serialization, which start with its
+ * own stream magic, are still decoded, so older repositories keep
+ * working and are rewritten as they are used.
+ * @author Ting Qi
+ */
+class Codec {
+
+    /** Magic number at the start of an encoded object. */
+    private static final int MAGIC = 0x474c;
+
+    /** Magic number at the start of a Java serialization stream. */
+    private static final int SERIALIZED = 0xaced;
+
+    /** Type byte of a commit. */
+    private static final int COMMIT = 'C';
+
+    /** Type byte of a removal list. */
+    private static final int REMOVE = 'R';
+
+    /** Type byte of a tree. */
+    private static final int TREE = 'T';
+
+    /** Version of the format written. Version 2 added trees. */
+    static final int VERSION = 2;
+
+    /**
+     * Encode the object.
+     * @param obj is a Commit, a Tree or a Remove.
+     * @return byte[].
+     */
+    static byte[] encode(Serializable obj) {
+        long start = Trace.start();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeShort(MAGIC);
+            if (obj instanceof Commit) {
+                out.write(COMMIT);
+                writeVarint(out, VERSION);
+                ((Commit) obj).encode(out);
+            } else if (obj instanceof Tree) {
+                out.write(TREE);
+                writeVarint(out, VERSION);
+                ((Tree) obj).encode(out);
+            } else if (obj instanceof Remove) {
+                out.write(REMOVE);
+                writeVarint(out, VERSION);
+                ((Remove) obj).encode(out);
+            } else {
+                throw error("Cannot encode %s.", obj.getClass().getName());
+            }
+        } catch (IOException excp) {
+            throw error("Internal error encoding object.");
+        }
+        byte[] result = bytes.toByteArray();
+        Trace.end(Trace.ENCODE, start, result.length);
+        return result;
+    }
+
+    /**
+     * Decode an object from the stream, which is closed afterwards.
+     * @param stream is the encoded or serialized object.
+     * @param expectedClass is the class of the object.
+     * @param <T> is the type of the object.
+     * @return T.
+     */
+    static <T extends Serializable> T decode(InputStream stream,
+                                             Class<T> expectedClass) {
+        long start = Trace.start();
+        T result = decodeStream(stream, expectedClass);
+        Trace.end(Trace.DECODE, start, 0);
+        return result;
+    }
+
+    /**
+     * Decode an object from the stream, which is closed afterwards.
+     * @param stream is the encoded or serialized object.
+     * @param expectedClass is the class of the object.
+     * @param <T> is the type of the object.
+     * @return T.
+     */
+    private static <T extends Serializable> T decodeStream(
+            InputStream stream, Class<T> expectedClass) {
+        try (DataInputStream in = new DataInputStream(
+                stream.markSupported() ? stream
+                : new BufferedInputStream(stream))) {
+            in.mark(2);
+            int magic = in.readUnsignedShort();
+            if (magic == SERIALIZED) {
+                in.reset();
+                return expectedClass.cast(
+                        new ObjectInputStream(in).readObject());
+            } else if (magic != MAGIC) {
+                throw error("Unknown object format.");
+            }
+            int type = in.read();
+            int version = (int) readVarint(in);
+            if (version > VERSION) {
+                throw error("Object written by a newer version.");
+            }
+            if (type == COMMIT) {
+                return expectedClass.cast(Commit.decode(in, version));
+            } else if (type == TREE) {
+                return expectedClass.cast(Tree.decode(in));
+            } else if (type == REMOVE) {
+                return expectedClass.cast(Remove.decode(in));
+            }
+            throw error("Unknown object type %d.", type);
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Get the staged files of an index written by Java serialization,
+     * from before the index had its own format.
+     * @param in is the serialized stage.
+     * @return HashMap from file name to blob id.
+     */
+    static HashMap<String, String> legacyStage(InputStream in) {
+        LegacyStage s = legacy(in, Stage.class, LegacyStage.class);
+        return s._current == null ? new HashMap<>() : s._current;
+    }
+
+    /**
+     * Get the contents of a blob written by Java serialization, from
+     * before blobs had their own format.
+     * @param in is the serialized blob.
+     * @return byte[].
+     */
+    static byte[] legacyBlob(InputStream in) {
+        return legacy(in, Blobs.class, LegacyBlob.class)._blob;
+    }
+
+    /**
+     * Read an object serialized as an instance of a class whose fields
+     * have since changed, into a class with the old fields.
+     * @param in is the serialized object.
+     * @param current is the class it was serialized as.
+     * @param shim is the class with its old fields.
+     * @param <T> is the type of SHIM.
+     * @return T.
+     */
+    private static <T> T legacy(InputStream in, Class<?> current,
+                                Class<T> shim) {
+        try (ObjectInputStream obj = new ObjectInputStream(in) {
+                @Override
+                protected ObjectStreamClass readClassDescriptor()
+                    throws IOException, ClassNotFoundException {
+                    ObjectStreamClass desc = super.readClassDescriptor();
+                    if (desc.getName().equals(current.getName())) {
+                        return ObjectStreamClass.lookup(shim);
+                    }
+                    return desc;
+                }
+            }) {
+            return shim.cast(obj.readObject());
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Check if the stored bytes were written by Java serialization.
+     * @param stored is the start of the stored bytes.
+     * @return boolean.
+     */
+    static boolean serialized(byte[] stored) {
+        return stored.length >= 2
+                && ((stored[0] & 0xff) << 8 | stored[1] & 0xff) == SERIALIZED;
+    }
+
+    /**
+     * Read the object from the file.
+     * @param file is the file.
+     * @param expectedClass is the class of the object.
+     * @param <T> is the type of the object.
+     * @return T.
+     */
+    static <T extends Serializable> T read(File file,
+                                           Class<T> expectedClass) {
+        return decode(new ByteArrayInputStream(readContents(file)),
+                expectedClass);
+    }
+
+    /**
+     * Write the object to the file.
+     * @param file is the file.
+     * @param obj is the object.
+     */
+    static void write(File file, Serializable obj) {
+        writeContents(file, encode(obj));
+    }
+
+    /**
+     * Write a non-negative number in as few bytes as it needs, seven
+     * bits at a time.
+     * @param out is the output.
+     * @param n is the number.
+     * @throws IOException if it cannot be written.
+     */
+    static void writeVarint(DataOutputStream out, long n)
+        throws IOException {
+        while ((n & ~0x7fL) != 0) {
+            out.write((int) (n & 0x7f) | 0x80);
+            n >>>= 7;
+        }
+        out.write((int) n);
+    }
+
+    /**
+     * Read a number written by writeVarint.
+     * @param in is the input.
+     * @return long.
+     * @throws IOException if it cannot be read.
+     */
+    static long readVarint(DataInputStream in) throws IOException {
+        long n = 0;
+        for (int shift = 0;; shift += 7) {
+            int b = in.readUnsignedByte();
+            n |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return n;
+            }
+        }
+    }
+
+    /**
+     * Write a string, or null, as its length plus one followed by its
+     * UTF-8 bytes; null is written as a zero length.
+     * @param out is the output.
+     * @param s is the string.
+     * @throws IOException if it cannot be written.
+     */
+    static void writeString(DataOutputStream out, String s)
+        throws IOException {
+        if (s == null) {
+            writeVarint(out, 0);
+            return;
+        }
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, b.length + 1);
+        out.write(b);
+    }
+
+    /**
+     * Read a string written by writeString.
+     * @param in is the input.
+     * @return String, or null.
+     * @throws IOException if it cannot be read.
+     */
+    static String readString(DataInputStream in) throws IOException {
+        int n = (int) readVarint(in);
+        if (n == 0) {
+            return null;
+        }
+        byte[] b = new byte[n - 1];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    /** The fields of a stage as Java serialization wrote them. */
+    private static class LegacyStage implements Serializable {
+
+        /** The staged files. */
+        private HashMap<String, String> _current;
+    }
+
+    /** The fields of a blob as Java serialization wrote them. */
+    private static class LegacyBlob implements Serializable {
+
+        /** The contents. */
+        private byte[] _blob;
+    }
+}
@@ -1,11 +1,24 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Date;
 import java.util.Set;
+import java.util.HashMap;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 
 import static gitlet.Utils.*;
 
@@ -18,55 +31,126 @@ public class Commands {
      * Creates a new Gitlet version-control system in the current directory.
      */
     public void init() {
-        File dir = new File(".gitlet");
-        if (!dir.exists()) {
-            dir.mkdir();
-            new File(".gitlet/stage").mkdir();
-            new File(".gitlet/objects").mkdir();
-            new File(".gitlet/refs").mkdir();
-            new File(".gitlet/refs/heads").mkdir();
-            Commit initial = new Commit("initial commit", null, null,
-                    new Date(0));
-            String branch = "master";
-            writeObject(join(".gitlet/objects", initial.sha1()), initial);
-            writeContents(join(".gitlet/HEAD"), branch.getBytes());
-            writeObject(join(".gitlet/refs/heads/master"), initial);
-            writeObject(join(".gitlet/remove"), new Remove());
-            Stage s = new Stage();
-            writeObject(join(".gitlet/stage/index"), s);
-        } else {
-            System.out.println("A Gitlet version-control system"
-                    + " already exists in the current directory.");
+        long start = Trace.start();
+        try {
+            File dir = new File(".gitlet");
+            if (!dir.exists()) {
+                dir.mkdir();
+                new File(".gitlet/stage").mkdir();
+                new File(".gitlet/objects").mkdir();
+                new File(".gitlet/refs").mkdir();
+                new File(".gitlet/refs/heads").mkdir();
+                Commit initial = new Commit("initial commit", null, null,
+                        new Date(0));
+                String branch = "master";
+                initial.setTree(Tree.write(new HashMap<>()));
+                ObjectStore.writeCommit(initial);
+                Transaction.replace(join(".gitlet/HEAD"), branch.getBytes());
+                Refs.write(branch, initial.getSha1());
+                Transaction.replace(join(".gitlet/remove"),
+                        Codec.encode(new Remove()));
+                new Stage().write();
+            } else {
+                System.out.println("A Gitlet version-control system"
+                        + " already exists in the current directory.");
+            }
+        } finally {
+            Trace.end("Commands.init", start);
         }
     }
 
     /**
-     * Adds a copy of the file as it currently exists to the staging area.
-     * @param name is the file name.
+     * Adds a copy of each file as it currently exists to the staging
+     * area. A directory adds every file below it. Files are hashed and
+     * their blobs written in parallel, and the stage and removal list
+     * are written once at the end.
+     * @param names is the file and directory names.
      */
-    public void add(String name) {
-        Stage s = readObject(join(".gitlet/stage/index"), Stage.class);
-        File file = new File(name);
-        Blobs b;
-        Remove r = readObject(join(".gitlet/remove"), Remove.class);
-        if (file.exists()) {
-            if (Stage.changeNotStaged(name)
-                    || Stage.trackedChanged(name) || !Stage.tracked(name)) {
-                b = new Blobs(file);
-                String path = ".gitlet/stage/";
-                writeObject(join(path, b.getName()), b);
-                s.put(name, b.getName());
+    @SuppressWarnings("unchecked")
+    public void add(String... names) {
+        long start = Trace.start();
+        try {
+            Repo repo = repo();
+            Stage s = repo.stage();
+            Remove r = repo.removed();
+            List<String> files = new ArrayList<>();
+            for (String name : names) {
+                if (!new File(name).exists()) {
+                    throw error("File does not exist.");
+                }
+                files.addAll(workingFiles(name));
             }
-        } else {
-            System.out.println("File does not exist.");
-            System.exit(0);
+            HashMap<String, String> head = repo.head().getFile();
+            ConcurrentHashMap<String, String> blobs = new ConcurrentHashMap<>();
+            File stage = join(".gitlet/stage");
+            ForkJoinPool.commonPool().submit(() ->
+                files.parallelStream().forEach(name -> {
+                    if (repo.changeNotStaged(name)
+                            || repo.trackedChanged(name)
+                            || !repo.tracked(name)) {
+                        Blobs b = new Blobs(join(name), stage, head.get(name));
+                        blobs.put(name, b.getName());
+                    }
+                })).join();
+            for (String name : files) {
+                if (blobs.containsKey(name)) {
+                    s.put(name, blobs.get(name));
+                }
+                if (repo.tracked(name) && r.getfile().contains(name)) {
+                    r.remove(name);
+                    s.remove(name);
+                }
+            }
+            s.write();
+            Transaction.replace(join(".gitlet/remove"), Codec.encode(r));
+        } finally {
+            Trace.end("Commands.add", start);
         }
-        if (Stage.tracked(name) && r.getfile().contains(name)) {
-            r.remove(name);
-            s.remove(name);
+    }
+
+    /**
+     * Get the name of the file, or of every file below the directory
+     * except the repository itself, which is not walked, as paths from
+     * the working directory with "/" between directories.
+     * @param name is the file or directory name.
+     * @return List.
+     */
+    private static List<String> workingFiles(String name) {
+        Path cwd = Paths.get("").toAbsolutePath();
+        Path full = cwd.resolve(name).normalize();
+        if (!full.startsWith(cwd)) {
+            throw error("File is outside the repository.");
+        }
+        Path root = cwd.relativize(full);
+        if (!Files.isDirectory(full)) {
+            return Collections.singletonList(
+                root.toString().replace(File.separatorChar, '/'));
+        }
+        Path repo = Paths.get(".gitlet");
+        List<String> result = new ArrayList<>();
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir,
+                        BasicFileAttributes attrs) {
+                    return dir.equals(repo) ? FileVisitResult.SKIP_SUBTREE
+                        : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file,
+                        BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile()) {
+                        result.add(file.toString()
+                                .replace(File.separatorChar, '/'));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
         }
-        writeObject(join(".gitlet/stage/index"), s);
-        writeObject(join(".gitlet/remove"), r);
+        return result;
     }
 
     /**
@@ -76,54 +160,59 @@ public class Commands {
      */
     @SuppressWarnings("unchecked")
     public void commit(String msg) {
-        if (msg == null || msg.equals("")) {
-            System.out.println("Please enter a commit message.");
-            return;
-        }
-        boolean changed = false;
-        String head = readContentsAsString(join(".gitlet/HEAD"));
-        Commit parent = readObject(join(".gitlet/refs/heads", head),
-                Commit.class);
-        Commit parent2 = null;
-        Commit commit = new Commit(msg, parent.getSha1(), null, new Date());
-        if (msg.split(" ")[0].equals("Merged")) {
-            parent2 = readObject(join(".gitlet/refs/heads",
-                    msg.split(" ")[1]), Commit.class);
-            commit = new Commit(msg, parent.getSha1(), parent2.getSha1(),
-                    new Date());
-        }
-        Set<String> set = (Set<String>) parent.getFile().keySet();
-        for (String name : set) {
-            commit.put(name, (String) parent.getFile().get(name));
-        }
-        Stage s = readObject(join(".gitlet/stage/index"), Stage.class);
-        Set<String> keys = s.getFile().keySet();
-        for (String name : keys) {
-            changed = true;
-            String sha1 = (String) s.getFile().get(name);
-            Blobs b = readObject(join(".gitlet/stage", sha1), Blobs.class);
-            commit.put(name, sha1);
-            writeObject(join(".gitlet/objects", sha1), b);
-        }
-        Remove rm = readObject(join(".gitlet/remove"), Remove.class);
-        for (String r : rm.getfile()) {
-            changed = true;
-            if (commit.getFile().get(r) != null) {
-                commit.remove(r);
-            }
-        }
-        rm = new Remove();
-        if (!changed) {
-            System.out.println("No changes added to the commit.");
-            return;
-        }
-        writeObject(join(".gitlet/objects", commit.sha1()), commit);
-        writeObject(join(".gitlet/refs/heads", head), commit);
-        writeObject(join(".gitlet/remove"), rm);
-        for (String f : plainFilenamesIn(".gitlet/stage")) {
-            join(".gitlet/stage", f).delete();
+        long start = Trace.start();
+        try {
+            if (msg == null || msg.equals("")) {
+                System.out.println("Please enter a commit message.");
+                return;
+            }
+            boolean changed = false;
+            Repo repo = repo();
+            String head = repo.branch();
+            Commit parent = repo.head();
+            Commit parent2 = null;
+            Commit commit = new Commit(msg, parent.getSha1(), null, new Date());
+            if (msg.split(" ")[0].equals("Merged")) {
+                parent2 = ObjectStore.read(Refs.read(msg.split(" ")[1]),
+                        Commit.class);
+                commit = new Commit(msg, parent.getSha1(), parent2.getSha1(),
+                        new Date());
+            }
+            HashMap<String, String> changes = new HashMap<>();
+            Stage s = repo.stage();
+            Set<String> keys = s.getFile().keySet();
+            for (String name : keys) {
+                changed = true;
+                String sha1 = (String) s.getFile().get(name);
+                changes.put(name, sha1);
+                if (join(".gitlet/stage", sha1).exists()) {
+                    ObjectStore.store(sha1, join(".gitlet/stage", sha1));
+                }
+            }
+            Remove rm = repo.removed();
+            for (String r : rm.getfile()) {
+                changed = true;
+                changes.put(r, null);
+            }
+            rm = new Remove();
+            if (!changed) {
+                System.out.println("No changes added to the commit.");
+                return;
+            }
+            commit.setTree(Tree.update(parent.tree(), changes));
+            ObjectStore.writeCommit(commit);
+            Refs.write(head, commit.getSha1());
+            Transaction.replace(join(".gitlet/remove"), Codec.encode(rm));
+            repo.setHead(head, commit);
+            repo.setRemoved(rm);
+            for (String f : plainFilenamesIn(".gitlet/stage")) {
+                Transaction.delete(join(".gitlet/stage", f));
+            }
+            s.clear();
+            s.write();
+        } finally {
+            Trace.end("Commands.commit", start);
         }
-        writeObject(join(".gitlet/stage/index"), new Stage());
     }
 
     /**
@@ -135,30 +224,31 @@ public class Commands {
      * @param name is the file name.
      */
     public void rm(String name) {
-        String head = readContentsAsString(join(".gitlet/HEAD"));
-        Commit current = readObject(join(".gitlet/refs/heads", head),
-                Commit.class);
-        File record = new File(".gitlet/remove");
-        Remove r = readObject(record, Remove.class);
-        boolean find = false;
-        if (current.getFile().get(name) != null) {
-            r.add(name);
-            if (join(name).exists()) {
-                join(name).delete();
-            }
-            find = true;
-        }
-        if (join(".gitlet/stage/index").exists()) {
-            Stage s = readObject(join(".gitlet/stage/index"), Stage.class);
+        long start = Trace.start();
+        try {
+            Repo repo = repo();
+            Commit current = repo.head();
+            Remove r = repo.removed();
+            boolean find = false;
+            if (current.getFile().get(name) != null) {
+                r.add(name);
+                if (join(name).exists()) {
+                    join(name).delete();
+                }
+                find = true;
+            }
+            Stage s = repo.stage();
             if (s.getFile().get(name) != null) {
                 s.remove(name);
-                writeObject(join(".gitlet/stage/index"), s);
+                s.write();
                 find = true;
             }
-        }
-        writeObject(join(".gitlet/remove"), r);
-        if (!find) {
-            System.out.println("No reason to remove the file.");
+            Transaction.replace(join(".gitlet/remove"), Codec.encode(r));
+            if (!find) {
+                System.out.println("No reason to remove the file.");
+            }
+        } finally {
+            Trace.end("Commands.rm", start);
         }
     }
 
@@ -167,27 +257,28 @@ public class Commands {
      *  following the first parent commit links, ignoring any second parents
      *  found in merge commits.*/
     public void log() {
-        String head = readContentsAsString(join(".gitlet/HEAD"));
-        Commit current = readObject(join(".gitlet/refs/heads", head),
-                Commit.class);
-        String path = ".gitlet/objects";
-        String sha1 = current.getSha1();
-        while (sha1 != null) {
-            Commit commit = readObject(join(path, sha1), Commit.class);
-            commit.print();
-            sha1 = commit.getParent();
+        long start = Trace.start();
+        try {
+            CommitGraph graph = repo().graph();
+            int head = graph.position(repo().head().getSha1());
+            if (head == CommitGraph.NONE) {
+                throw error("Head commit is missing from the commit graph.");
+            }
+            for (int k = head; k != CommitGraph.NONE; k = graph.parent(k)) {
+                ObjectStore.read(graph.id(k), Commit.class).print();
+            }
+        } finally {
+            Trace.end("Commands.log", start);
         }
     }
 
     /** Like log, except displays information about all commits ever made. */
     public void globalLog() {
-        String path = ".gitlet/objects";
-        List<String> all = plainFilenamesIn(path);
-        for (String c : all) {
-            if (c.charAt(0) == 'c') {
-                Commit commit = readObject(join(path, c), Commit.class);
-                commit.print();
-            }
+        long start = Trace.start();
+        try {
+            CommitJournal.print();
+        } finally {
+            Trace.end("Commands.globalLog", start);
         }
     }
 
@@ -197,83 +288,91 @@ public class Commands {
      * @param msg is the commit message.
      */
     public void find(String msg) {
-        String path = ".gitlet/objects";
-        boolean find = false;
-        for (String sha1 : plainFilenamesIn(path)) {
-            if (join(path, sha1).exists() && sha1.charAt(0) == 'c') {
-                Commit commit = readObject(join(path, sha1), Commit.class);
-                if (commit.getMessage().equals(msg)) {
-                    find = true;
-                    System.out.println(sha1);
-                }
-            }
+        long start = Trace.start();
+        try {
+            print(MessageIndex.exact(msg));
+        } finally {
+            Trace.end("Commands.find", start);
         }
-        if (!find) {
+    }
+
+    /**
+     * Prints out the ids of all commits whose message contains every word
+     * of the given text, ignoring case and punctuation, one per line.
+     * @param words is the words.
+     */
+    public void findWords(String words) {
+        long start = Trace.start();
+        try {
+            print(MessageIndex.words(words));
+        } finally {
+            Trace.end("Commands.findWords", start);
+        }
+    }
+
+    /**
+     * Prints the ids found by find, one per line.
+     * @param ids is the commit ids.
+     */
+    private void print(List<String> ids) {
+        if (ids.isEmpty()) {
             System.out.println("Found no commit with that message.");
         }
+        for (String id : ids) {
+            System.out.println(id);
+        }
     }
 
     /** Displays what branches currently exist, and marks the current branch
      *  with a *. */
     @SuppressWarnings("unchecked")
     public void status() {
-        File dir = new File(".gitlet");
-        if (!dir.exists()) {
-            System.out.println("Not in an initialized Gitlet directory.");
-            return;
-        }
-        String head = readContentsAsString(join(".gitlet/HEAD"));
-        System.out.println("=== Branches ===");
-        List<String> branches = plainFilenamesIn(".gitlet/refs/heads");
-        Collections.sort(branches);
-        for (String branch : branches) {
-            if (head.equals(branch)) {
-                System.out.format("*%s\n", branch);
-            } else {
-                System.out.println(branch);
+        long start = Trace.start();
+        try {
+            File dir = new File(".gitlet");
+            if (!dir.exists()) {
+                System.out.println("Not in an initialized Gitlet directory.");
+                return;
             }
-        }
-        System.out.println();
-        Stage s = readObject(join(".gitlet/stage/index"), Stage.class);
-        List<String> keys = new ArrayList<String>(s.getFile().keySet());
-        Collections.sort(keys);
-        System.out.println("=== Staged Files ===");
-        for (String name : keys) {
-            System.out.println(name);
-        }
-        System.out.println();
-        System.out.println("=== Removed Files ===");
-        Remove d = readObject(join(".gitlet/remove"), Remove.class);
-        for (String toDelete : d.getfile()) {
-            System.out.println(toDelete);
-        }
-        System.out.println();
-        System.out.println("=== Modifications Not Staged For Commit ===");
-        for (String f : plainFilenamesIn(System.getProperty("user.dir"))) {
-            if (Stage.trackedChanged(f) && s.getFile().get(f) == null) {
-                System.out.format("%s (modified)\n", f);
-            } else if (Stage.changeNotStaged(f)) {
-                System.out.format("%s (modified)\n", f);
+            Repo repo = repo();
+            String head = repo.branch();
+            System.out.println("=== Branches ===");
+            for (String branch : Refs.branches()) {
+                if (head.equals(branch)) {
+                    System.out.format("*%s\n", branch);
+                } else {
+                    System.out.println(branch);
+                }
             }
-        }
-        Commit current = readObject(join(".gitlet/refs/heads", head),
-                Commit.class);
-        for (String f : (Set<String>) current.getFile().keySet()) {
-            if (s.getFile().get(f) != null && !join(f).exists()) {
-                System.out.format("%s (deleted)\n", f);
-            } else if (!join(f).exists() && Stage.trackedDeleted(f)
-                    && !d.getfile().contains(f)) {
-                System.out.format("%s (deleted)\n", f);
+            System.out.println();
+            Stage s = repo.stage();
+            List<String> keys = new ArrayList<String>(s.getFile().keySet());
+            Collections.sort(keys);
+            System.out.println("=== Staged Files ===");
+            for (String name : keys) {
+                System.out.println(name);
             }
-        }
-        System.out.println();
-        System.out.println("=== Untracked Files ===");
-        for (String f : plainFilenamesIn(System.getProperty("user.dir"))) {
-            if (!Stage.tracked(f) && !Stage.staged(f)) {
-                System.out.format("%s\n", f);
+            System.out.println();
+            System.out.println("=== Removed Files ===");
+            Remove d = repo.removed();
+            for (String toDelete : d.getfile()) {
+                System.out.println(toDelete);
+            }
+            System.out.println();
+            StatusScan scan = new StatusScan(repo);
+            System.out.println("=== Modifications Not Staged For Commit ===");
+            for (String f : scan.modified()) {
+                System.out.println(f);
+            }
+            System.out.println();
+            System.out.println("=== Untracked Files ===");
+            for (String f : scan.untracked()) {
+                System.out.println(f);
             }
+            System.out.println();
+        } finally {
+            Trace.end("Commands.status", start);
         }
-        System.out.println();
     }
 
     /**
@@ -282,55 +381,41 @@ public class Commands {
      * @param args is the input args.
      */
     public void checkout(String[] args) {
-        if (args[1].equals("--")) {
-            String name = args[2];
-            String head = readContentsAsString(join(".gitlet/HEAD"));
-            Commit current = readObject(join(".gitlet/refs/heads", head),
-                    Commit.class);
-            String blobSha1 = (String) current.getFile().get(name);
-            if (blobSha1 != null) {
-                Blobs b = readObject(join(".gitlet/objects", blobSha1),
-                        Blobs.class);
-                writeContents(join(name), b.getBlob());
-                return;
-            } else {
-                System.out.println("File does not exist in that commit.");
-            }
-        } else if (args.length == 4) {
-            if (args[2].equals("--")) {
-                String commitId = args[1];
-                String name = args[3];
-                String path = ".gitlet/objects";
-                Boolean exsitId = false;
-                for (String sha1 : plainFilenamesIn(path)) {
-                    if (sha1.charAt(0) == 'c') {
-                        Commit commit = readObject(join(path, sha1),
-                                Commit.class);
-                        if (commitId.regionMatches(true, 0,
-                                sha1, 0, commitId.length())) {
-                            exsitId = true;
-                            if (commit.getFile().get(name) != null) {
-                                String blobsha1 = (String)
-                                        commit.getFile().get(name);
-                                Blobs b = readObject(join(".gitlet/objects",
-                                        blobsha1),
-                                        Blobs.class);
-                                writeContents(join(name), b.getBlob());
-                                return;
-                            }
-                        }
-                    }
-                }
-                if (exsitId) {
+        long start = Trace.start();
+        try {
+            if (args[1].equals("--")) {
+                String name = args[2];
+                Commit current = repo().head();
+                String blobSha1 = (String) current.getFile().get(name);
+                if (blobSha1 != null) {
+                    Blobs.write(blobSha1, join(name));
+                    return;
+                } else {
                     System.out.println("File does not exist in that commit.");
+                }
+            } else if (args.length == 4) {
+                if (args[2].equals("--")) {
+                    String commitId = args[1];
+                    String name = args[3];
+                    Commit commit = findCommit(commitId);
+                    if (commit == null) {
+                        return;
+                    }
+                    String blobsha1 = (String) commit.getFile().get(name);
+                    if (blobsha1 != null) {
+                        Blobs.write(blobsha1, join(name));
+                    } else {
+                        System.out.println(
+                                "File does not exist in that commit.");
+                    }
                 } else {
-                    System.out.println("No commit with that id exists.");
+                    System.out.println("Incorrect operands.");
                 }
             } else {
-                System.out.println("Incorrect operands.");
+                checkout(args[1]);
             }
-        } else {
-            checkout(args[1]);
+        } finally {
+            Trace.end("Commands.checkout", start);
         }
     }
 
@@ -342,66 +427,64 @@ public class Commands {
      */
     @SuppressWarnings("unchecked")
     private void checkout(String bran) {
-        String currentBranch = readContentsAsString(join(".gitlet/HEAD"));
-        Commit current = readObject(join(".gitlet/refs/heads",
-                currentBranch), Commit.class);
+        Repo repo = repo();
+        String currentBranch = repo.branch();
         if (bran.equals(currentBranch)) {
             System.out.println("No need to checkout the current branch.");
             return;
         }
-        if (join(".gitlet/refs/heads", bran).exists()) {
-            Commit given = readObject(join(".gitlet/refs/heads",
-                    bran), Commit.class);
-            Set<String> keys = (Set<String>) given.getFile().keySet();
-            Set<String> keysCurrent = (Set<String>) current.getFile().keySet();
-            for (String f : plainFilenamesIn(System.getProperty("user.dir"))) {
-                if (Stage.changeNotStaged(f)
-                        || Stage.trackedChanged(f) || !Stage.tracked(f)) {
-                    System.out.println("There is an untracked file in the way;"
-                            + " delete it, or add and commit it first.");
-                    return;
-                }
-            }
-            for (String name : keys) {
-                String sha1 = (String) given.getFile().get(name);
-                Blobs b = readObject(join(".gitlet/objects", sha1),
-                        Blobs.class);
-                writeContents(join(System.getProperty("user.dir"), name),
-                        b.getBlob());
-            }
-            for (String name : keysCurrent) {
-                if (!keys.contains(name)) {
-                    join(System.getProperty("user.dir"), name).delete();
-                }
+        String givenId = Refs.read(bran);
+        if (givenId != null) {
+            Commit given = ObjectStore.read(givenId, Commit.class);
+            WorkTree work = new WorkTree(repo, given);
+            if (work.inTheWay()) {
+                System.out.println("There is an untracked file in the way;"
+                        + " delete it, or add and commit it first.");
+                return;
             }
-            writeContents(join(".gitlet/HEAD"), bran.getBytes());
+            work.update();
+            Transaction.replace(join(".gitlet/HEAD"), bran.getBytes());
+            repo.setHead(bran, given);
             for (String f : plainFilenamesIn(".gitlet/stage")) {
-                join(".gitlet/stage", f).delete();
+                Transaction.delete(join(".gitlet/stage", f));
             }
-            writeObject(join(".gitlet/stage/index"), new Stage());
+            repo.stage().clear();
+            repo.stage().write();
         } else {
             System.out.println("No such branch exists.");
         }
     }
 
+    /** Rewrites objects stored in an older format, then moves all loose
+     *  objects into a single pack file and all loose refs into the
+     *  packed-refs file, and sorts the commit-id index. */
+    public void repack() {
+        long start = Trace.start();
+        try {
+            ObjectStore.migrate();
+            Pack.repack();
+            Refs.pack();
+            CommitIndex.compact();
+        } finally {
+            Trace.end("Commands.repack", start);
+        }
+    }
+
     /**
      * Creates a new branch with the given name, and points it at the
      * current head node.
      * @param name is the branch name.
      */
     public void branch(String name) {
-        File branch = join(".gitlet/refs/heads", name);
-        if (name.split("/").length == 2) {
-            join(".gitlet/refs/heads", name
-                    .split("/")[0]).mkdir();
-        }
-        if (!branch.exists()) {
-            String head = readContentsAsString(join(".gitlet/HEAD"));
-            Commit current = readObject(join(".gitlet/refs/heads", head),
-                    Commit.class);
-            writeObject(branch, current);
-        } else {
-            System.out.println("A branch with that name already exists.");
+        long start = Trace.start();
+        try {
+            if (!Refs.exists(name)) {
+                Refs.write(name, repo().head().getSha1());
+            } else {
+                System.out.println("A branch with that name already exists.");
+            }
+        } finally {
+            Trace.end("Commands.branch", start);
         }
     }
 
@@ -410,16 +493,20 @@ public class Commands {
      * @param name is the branch name.
      */
     public void rmBranch(String name) {
-        String head = readContentsAsString(join(".gitlet/HEAD"));
-        String path = ".gitlet/refs/heads";
-        if (join(path, name).exists()) {
-            if (!name.equals(head)) {
-                (join(path, name)).delete();
+        long start = Trace.start();
+        try {
+            String head = repo().branch();
+            if (Refs.exists(name)) {
+                if (!name.equals(head)) {
+                    Refs.delete(name);
+                } else {
+                    System.out.println("Cannot remove the current branch.");
+                }
             } else {
-                System.out.println("Cannot remove the current branch.");
+                System.out.println("A branch with that name does not exist.");
             }
-        } else {
-            System.out.println("A branch with that name does not exist.");
+        } finally {
+            Trace.end("Commands.rmBranch", start);
         }
     }
 
@@ -429,47 +516,47 @@ public class Commands {
      */
     @SuppressWarnings("unchecked")
     public void reset(String id) {
-        String head = readContentsAsString(join(".gitlet/HEAD"));
-        String path = ".gitlet/objects";
-        boolean find = false;
-        for (String sha1 : plainFilenamesIn(path)) {
-            if (sha1.charAt(0) == 'c') {
-                if (id.regionMatches(true, 0,
-                        sha1, 0, id.length())) {
-                    find = true;
-                    Commit commit = readObject(join(path, sha1), Commit.class);
-                    Set<String> given = commit.getFile().keySet();
-                    for (String f : plainFilenamesIn(System.getProperty
-                            ("user.dir"))) {
-                        if (Stage.changeNotStaged(f)
-                            || Stage.trackedChanged(f) || !Stage.tracked(f)) {
-                            System.out.println("There is an untracked file "
-                                    + "in the way; delete it, "
-                                    + "or add and commit it first.");
-                            return;
-                        }
-                    }
-                    for (String name : given) {
-                        String[] file = new String[4];
-                        file[1] = commit.getSha1();
-                        file[2] = "--";
-                        file[3] = name;
-                        checkout(file);
-                    }
-                    for (String f : plainFilenamesIn(System.getProperty
-                            ("user.dir"))) {
-                        if (!given.contains(f)) {
-                            join(f).delete();
-                        }
-                    }
-                    writeObject(join(".gitlet/refs/heads", head), commit);
-                    writeObject(join(".gitlet/stage/index"), new Stage());
-                }
+        long start = Trace.start();
+        try {
+            Repo repo = repo();
+            String head = repo.branch();
+            Commit commit = findCommit(id);
+            if (commit == null) {
+                return;
             }
+            WorkTree work = new WorkTree(repo, commit);
+            if (work.inTheWay()) {
+                System.out.println("There is an untracked file "
+                        + "in the way; delete it, "
+                        + "or add and commit it first.");
+                return;
+            }
+            work.update();
+            Refs.write(head, commit.getSha1());
+            repo.setHead(head, commit);
+            repo.stage().clear();
+            repo.stage().write();
+        } finally {
+            Trace.end("Commands.reset", start);
         }
-        if (!find) {
+    }
+
+    /**
+     * Get the commit whose id starts with the abbreviated id, printing
+     * why if there is not exactly one.
+     * @param id is the abbreviated commit id.
+     * @return Commit, or null.
+     */
+    private Commit findCommit(String id) {
+        List<String> found = CommitIndex.read().lookup(id, 2);
+        if (found.isEmpty()) {
             System.out.println("No commit with that id exists.");
+            return null;
+        } else if (found.size() > 1) {
+            System.out.println("Commit id is ambiguous.");
+            return null;
         }
+        return ObjectStore.read(found.get(0), Commit.class);
     }
 
     /**
@@ -478,37 +565,40 @@ public class Commands {
      */
     @SuppressWarnings("unchecked")
     public void merge(String bran) {
-        String givenBranch = bran;
-        String currentBranch = readContentsAsString(join(".gitlet/HEAD"));
-        String path = ".gitlet/refs/heads";
-        if (!join(path, givenBranch).exists()) {
-            System.out.println("A branch with that name does not exist.");
-            return;
-        }
-        if (currentBranch.equals(givenBranch)) {
-            System.out.println("Cannot merge a branch with itself.");
-            return;
-        }
-        Stage s = readObject(join(".gitlet/stage/index"), Stage.class);
-        Remove r = readObject(join(".gitlet/remove"), Remove.class);
-        if (!s.getFile().isEmpty() || !r.getfile().isEmpty()) {
-            System.out.println("You have uncommitted changes.");
-            return;
-        }
-        Commit given = readObject(join(path, givenBranch), Commit.class);
-        Commit current = readObject(join(path, currentBranch), Commit.class);
-        Set<String> keysGiven = given.getFile().keySet();
-        Set<String> keysCurrent = current.getFile().keySet();
-        for (String f : plainFilenamesIn(System.getProperty("user.dir"))) {
-            if (Stage.changeNotStaged(f)
-                    || Stage.trackedChanged(f) || !Stage.tracked(f)) {
+        long start = Trace.start();
+        try {
+            String givenBranch = bran;
+            Repo repo = repo();
+            String currentBranch = repo.branch();
+            String givenId = Refs.read(givenBranch);
+            if (givenId == null) {
+                System.out.println("A branch with that name does not exist.");
+                return;
+            }
+            if (currentBranch.equals(givenBranch)) {
+                System.out.println("Cannot merge a branch with itself.");
+                return;
+            }
+            Stage s = repo.stage();
+            Remove r = repo.removed();
+            if (!s.getFile().isEmpty() || !r.getfile().isEmpty()) {
+                System.out.println("You have uncommitted changes.");
+                return;
+            }
+            Commit given = ObjectStore.read(givenId, Commit.class);
+            Commit current = repo.head();
+            Set<String> keysGiven = given.getFile().keySet();
+            Set<String> keysCurrent = current.getFile().keySet();
+            if (new WorkTree(repo, given).inTheWay()) {
                 System.out.println("There is an untracked file in the "
                         + "way; delete it, or add and commit it first.");
                 return;
             }
+            merge(current, given,
+                    currentBranch, givenBranch, keysCurrent, keysGiven);
+        } finally {
+            Trace.end("Commands.merge", start);
         }
-        merge(current, given,
-                currentBranch, givenBranch, keysCurrent, keysGiven);
     }
 
     /**
@@ -523,37 +613,21 @@ public class Commands {
     private void merge(Commit current, Commit given,
                        String currentBranch, String givenBranch,
                        Set<String> keysCurrent, Set<String> keysGiven) {
-        String pathCommit = ".gitlet/objects";
-        ArrayList<String> pastCommit1 = new ArrayList<>();
-        ArrayList<String> pastCommit2 = new ArrayList<>();
-        String currentSha1 = current.getSha1();
-        while (currentSha1 != null) {
-            pastCommit1.add(currentSha1);
-            current = readObject(join(pathCommit, currentSha1), Commit.class);
-            currentSha1 = current.getParent();
-        }
-        if (pastCommit1.contains(given.getSha1())) {
+        CommitGraph graph = repo().graph();
+        int cur = graph.position(current.getSha1());
+        int giv = graph.position(given.getSha1());
+        if (MergeBase.isAncestor(graph, giv, cur)) {
             System.out.println("Given branch is an ancestor "
                     + "of the current branch.");
             return;
         }
-        String givenSha1 = given.getSha1();
-        Commit split = null;
-        while (join(pathCommit, givenSha1).exists()) {
-            pastCommit2.add(givenSha1);
-            if (givenSha1.equals(pastCommit1.get(0))) {
-                System.out.println("Current branch fast-forwarded.");
-                writeObject(join(".gitlet/refs/heads", currentBranch),
-                        pastCommit2.get(0));
-                return;
-            } else if (pastCommit1.contains(givenSha1)) {
-                split = readObject(join(pathCommit, givenSha1),
-                        Commit.class);
-                break;
-            }
-            given = readObject(join(pathCommit, givenSha1), Commit.class);
-            givenSha1 = given.getParent();
+        if (MergeBase.isAncestor(graph, cur, giv)) {
+            System.out.println("Current branch fast-forwarded.");
+            reset(given.getSha1());
+            return;
         }
+        int[] bases = MergeBase.bases(graph, cur, giv);
+        Commit split = ObjectStore.read(graph.id(bases[0]), Commit.class);
         merge(currentBranch, givenBranch, split, keysCurrent, keysGiven);
     }
 
@@ -570,10 +644,9 @@ public class Commands {
                        Commit split, Set keysCurrent, Set keysGiven) {
         Set<String> keys = split.getFile().keySet();
         boolean conflict = false;
-        String path = ".gitlet/refs/heads";
-        String pathCommit = ".gitlet/objects";
-        Commit given = readObject(join(path, givenBranch), Commit.class);
-        Commit current = readObject(join(path, currentBranch), Commit.class);
+        Commit given = ObjectStore.read(Refs.read(givenBranch),
+                Commit.class);
+        Commit current = repo().head();
         for (String name : keys) {
             if (!split.getFile().get(name).equals(given.getFile().get(name))
                     && split.getFile().get(name).equals
@@ -583,17 +656,15 @@ public class Commands {
                     fileToD[0] = (String) split.getFile().get(name);
                     rm(name);
                 } else {
-                    Blobs b = readObject(join(".gitlet/objects",
-                            (String) given.getFile().get(name)), Blobs.class);
-                    writeContents(join(name), b.getBlob());
+                    Blobs.write((String) given.getFile().get(name),
+                            join(name));
                     add(name);
                 }
             } else if (!split.getFile().get(name)
                     .equals(given.getFile().get(name))
                     && !split.getFile().get(name)
                     .equals(current.getFile().get(name))) {
-                conflict = checkConflict(given, current, name,
-                        pathCommit, conflict);
+                conflict = checkConflict(given, current, name, conflict);
             }
         }
         for (String name : (Set<String>) keysGiven) {
@@ -619,45 +690,53 @@ public class Commands {
      * @param given is the given commit.
      * @param current is the current commit.
      * @param name is the file name.
-     * @param pathCommit is the direction.
      * @param conflict is a boolean variable.
      * @return boolean.
      */
     private boolean checkConflict(Commit given, Commit current, String name,
-                                  String pathCommit, boolean conflict) {
-        if (given.getFile().get(name) != null
-                && current.getFile().get(name) != null
-                && !given.getFile().get(name)
-                .equals(current.getFile().get(name))) {
-            Blobs givenB = readObject(join(pathCommit,
-                    (String) given.getFile().get(name)), Blobs.class);
-            Blobs currentB = readObject(join(pathCommit,
-                    (String) current.getFile().get(name)), Blobs.class);
-            writeContents(join(System.getProperty("user.dir"), name),
-                    "<<<<<<< HEAD\n",
-                    currentB.getBlob(), "=======\n", givenB.getBlob(),
-                    ">>>>>>>\n");
-            add(name);
-            conflict = true;
-        } else if (given.getFile().get(name) == null
-                && current.getFile().get(name) != null) {
-            Blobs currentB = readObject(join(pathCommit,
-                    (String) current.getFile().get(name)), Blobs.class);
-            writeContents(join(System.getProperty("user.dir"), name),
-                    "<<<<<<< HEAD\n",
-                    currentB.getBlob(), "=======\n", ">>>>>>>\n");
-            add(name);
-            conflict = true;
-        } else if (given.getFile().get(name) != null
-                && current.getFile().get(name) == null) {
-            Blobs givenB = readObject(join(pathCommit,
-                    (String) given.getFile().get(name)), Blobs.class);
-            writeContents(join(System.getProperty("user.dir"), name),
-                    "<<<<<<< HEAD\n", "=======\n", givenB.getBlob(),
-                    ">>>>>>>\n");
-            add(name);
-            conflict = true;
-        }
-        return conflict;
+                                  boolean conflict) {
+        String givenId = (String) given.getFile().get(name);
+        String currentId = (String) current.getFile().get(name);
+        if (givenId == null ? currentId == null : givenId.equals(currentId)) {
+            return conflict;
+        }
+        File file = join(System.getProperty("user.dir"), name);
+        try (OutputStream out = new BufferedOutputStream(
+                Files.newOutputStream(file.toPath()))) {
+            out.write("<<<<<<< HEAD\n".getBytes(StandardCharsets.UTF_8));
+            if (currentId != null) {
+                Blobs.copy(currentId, out);
+            }
+            out.write("=======\n".getBytes(StandardCharsets.UTF_8));
+            if (givenId != null) {
+                Blobs.copy(givenId, out);
+            }
+            out.write(">>>>>>>\n".getBytes(StandardCharsets.UTF_8));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        add(name);
+        return true;
     }
+
+    /** Write back anything the command learned but did not save. */
+    public void close() {
+        if (_repo != null) {
+            _repo.flush();
+        }
+    }
+
+    /**
+     * Get the state of the repository, reading it on first use.
+     * @return Repo.
+     */
+    private Repo repo() {
+        if (_repo == null) {
+            _repo = new Repo();
+        }
+        return _repo;
+    }
+
+    /** The state of the repository for this command. */
+    private Repo _repo;
 }
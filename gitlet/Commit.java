@@ -1,10 +1,16 @@
 package gitlet;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.TimeZone;
+import java.util.TreeMap;
 
 /**
  * A class for commit and storing all commits.
@@ -12,6 +18,10 @@ import java.util.TimeZone;
  */
 public class Commit implements Serializable {
 
+    /** Serialization version of the first release, so objects it wrote
+     *  can still be decoded. */
+    private static final long serialVersionUID = 2113047122451142221L;
+
     /** Message.*/
     private String message;
 
@@ -21,15 +31,22 @@ public class Commit implements Serializable {
     /** Sha1.*/
     private String _sha1;
 
-    /** Something that keeps track of what files.*/
+    /** Something that keeps track of what files, or null until it is
+     *  read from the tree.*/
     private HashMap<String, String> store = new HashMap<>();
 
+    /** Id of the root tree, or null if the files are only in store.*/
+    private String _tree;
+
     /** Parent.*/
     private String _parent;
 
     /** Parent2 for merging.*/
     private String _parent2;
 
+    /** Time in milliseconds.*/
+    private long _time;
+
     /**
      * Commit constructor.
      * @param msg is message.
@@ -41,11 +58,101 @@ public class Commit implements Serializable {
         message = msg;
         _parent = parent;
         _parent2 = parent2;
+        _time = timestamp.getTime();
         SimpleDateFormat dt = new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy Z");
         dt.setTimeZone(TimeZone.getTimeZone("US/Pacific"));
         _timestamp = dt.format(timestamp);
     }
 
+    /** A commit whose fields are filled in by decode. */
+    private Commit() {
+    }
+
+    /**
+     * Get a copy of this commit that can be changed or have its files
+     * read without changing this one.
+     * @return Commit.
+     */
+    Commit copy() {
+        Commit c = new Commit();
+        c.message = message;
+        c._timestamp = _timestamp;
+        c._sha1 = _sha1;
+        c._parent = _parent;
+        c._parent2 = _parent2;
+        c._time = _time;
+        c._tree = _tree;
+        c.store = store == null ? null : new HashMap<>(store);
+        return c;
+    }
+
+    /**
+     * Get an estimate of the bytes this commit takes in memory.
+     * @return long.
+     */
+    long weight() {
+        long w = 256 + 2 * message.length();
+        if (store != null) {
+            for (Map.Entry<String, String> e : store.entrySet()) {
+                w += 96 + 2 * (e.getKey().length() + e.getValue().length());
+            }
+        }
+        return w;
+    }
+
+    /**
+     * Write the fields of this commit in the format of Codec.
+     * @param out is the output.
+     * @throws IOException if it cannot be written.
+     */
+    void encode(DataOutputStream out) throws IOException {
+        Codec.writeString(out, message);
+        Codec.writeString(out, _timestamp);
+        Codec.writeString(out, _sha1);
+        Codec.writeString(out, _parent);
+        Codec.writeString(out, _parent2);
+        Codec.writeVarint(out, _time);
+        Codec.writeString(out, _tree);
+        if (_tree == null) {
+            Codec.writeVarint(out, store.size());
+            for (Map.Entry<String, String> e : store.entrySet()) {
+                Codec.writeString(out, e.getKey());
+                Codec.writeString(out, e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Read a commit written by encode.
+     * @param in is the input.
+     * @param version is the version of the format it was written in.
+     * @return Commit.
+     * @throws IOException if it cannot be read.
+     */
+    static Commit decode(DataInputStream in, int version)
+        throws IOException {
+        Commit c = new Commit();
+        c.message = Codec.readString(in);
+        c._timestamp = Codec.readString(in);
+        c._sha1 = Codec.readString(in);
+        c._parent = Codec.readString(in);
+        c._parent2 = Codec.readString(in);
+        c._time = Codec.readVarint(in);
+        if (version >= 2) {
+            c._tree = Codec.readString(in);
+        }
+        if (c._tree != null) {
+            c.store = null;
+            return c;
+        }
+        int n = (int) Codec.readVarint(in);
+        c.store = new HashMap<>(Math.max(16, 2 * n));
+        for (int i = 0; i < n; i += 1) {
+            c.store.put(Codec.readString(in), Codec.readString(in));
+        }
+        return c;
+    }
+
     /**
      * Get the message.
      * @return String.
@@ -71,13 +178,53 @@ public class Commit implements Serializable {
     }
 
     /**
-     * Get the store HashMap.
+     * Get the second parent.
+     * @return String.
+     */
+    public String getParent2() {
+        return _parent2;
+    }
+
+    /**
+     * Get the time in milliseconds.
+     * @return long.
+     */
+    public long getTime() {
+        return _time;
+    }
+
+    /**
+     * Get the store HashMap, reading it from the tree on first use.
      * @return HashMap.
      */
     public HashMap getFile() {
+        if (store == null) {
+            store = Tree.flatten(_tree);
+        }
         return store;
     }
 
+    /**
+     * Get the id of the root tree, writing the trees of the files first
+     * if this commit does not have one.
+     * @return String.
+     */
+    String tree() {
+        if (_tree == null) {
+            _tree = Tree.write(store);
+        }
+        return _tree;
+    }
+
+    /**
+     * Make the tree the files of this commit.
+     * @param tree is the id of the root tree.
+     */
+    void setTree(String tree) {
+        _tree = tree;
+        store = null;
+    }
+
     /**
      * Get the Sha1.
      * @return String.
@@ -92,6 +239,8 @@ public class Commit implements Serializable {
      * @param sha1 is the sha1.
      */
     public void put(String name, String sha1) {
+        getFile();
+        _tree = null;
         store.put(name, sha1);
     }
 
@@ -100,29 +249,70 @@ public class Commit implements Serializable {
      * @param name is the name.
      */
     void remove(String name) {
+        getFile();
+        _tree = null;
         store.remove(name);
     }
 
     /**
-     * Create Sha1.
+     * Create Sha1 from everything the commit holds: its message, time,
+     * parents and files, so that commits made in the same second with
+     * the same message still get different ids. The files are hashed
+     * as the id of the root tree if there is one, and otherwise sorted
+     * by name.
      * @return String.
      */
     public String sha1() {
-        _sha1 = "c" + Utils.sha1(_timestamp, message);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            Codec.writeString(out, message);
+            Codec.writeString(out, _timestamp);
+            Codec.writeString(out, _parent);
+            Codec.writeString(out, _parent2);
+            Codec.writeVarint(out, _time);
+            Codec.writeString(out, _tree);
+            if (_tree == null) {
+                Codec.writeVarint(out, store.size());
+                for (Map.Entry<String, String> e
+                         : new TreeMap<>(store).entrySet()) {
+                    Codec.writeString(out, e.getKey());
+                    Codec.writeString(out, e.getValue());
+                }
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Internal error hashing commit.");
+        }
+        _sha1 = "c" + Utils.sha1((Object) bytes.toByteArray());
         return _sha1;
     }
 
     /** Print commit.*/
     public void print() {
-        System.out.println("===");
-        System.out.println("commit " + sha1());
-        if (_parent2 != null) {
-            System.out.println("Merge: " + getParent().substring(0, 7)
-                    + " " + _parent2.substring(0, 7));
+        StringBuilder out = new StringBuilder();
+        format(out, _sha1, _parent, _parent2, _timestamp, message);
+        System.out.print(out);
+    }
+
+    /**
+     * Append the log entry of a commit to OUT.
+     * @param out is the output.
+     * @param id is the commit id.
+     * @param parent is the parent, or null.
+     * @param parent2 is the second parent, or null.
+     * @param timestamp is the timestamp.
+     * @param msg is the message.
+     */
+    static void format(StringBuilder out, String id, String parent,
+                       String parent2, String timestamp, String msg) {
+        out.append("===\n");
+        out.append("commit ").append(id).append("\n");
+        if (parent2 != null) {
+            out.append("Merge: ").append(parent, 0, 7).append(" ")
+                .append(parent2, 0, 7).append("\n");
         }
-        System.out.println("Date: " + _timestamp);
-        System.out.println(message);
-        System.out.println();
+        out.append("Date: ").append(timestamp).append("\n");
+        out.append(msg).append("\n");
+        out.append("\n");
     }
 
 }
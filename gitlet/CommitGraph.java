@@ -0,0 +1,405 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import static gitlet.Utils.*;
+
+/**
+ * A class for the commit graph. The commit-graph file holds one
+ * fixed-size record per commit, in the order the commits were made: its
+ * id, the positions of its parents, its time and its generation number
+ * (one more than that of its highest parent). History can be walked and
+ * ancestry checked from it without reading any commit object. A new
+ * commit finds its parents through the positions in the commit-id index
+ * and reads only their records.
+ * @author Ting Qi
+ */
+class CommitGraph {
+
+    /** The commit-graph file. */
+    static final String GRAPH = ".gitlet/commit-graph";
+
+    /** Magic number at the start of the file. */
+    private static final int MAGIC = 0x47475048;
+
+    /** Version of the file format. */
+    private static final int VERSION = 1;
+
+    /** Bytes used for the id of a record. */
+    private static final int ID_BYTES = Utils.UID_LENGTH + 1;
+
+    /** Bytes used by a record: id, parents, time and generation. */
+    private static final int RECORD = ID_BYTES + 20;
+
+    /** Bytes used by the header: magic and version. */
+    private static final int HEADER = 8;
+
+    /** Parent position of a commit without that parent. */
+    static final int NONE = -1;
+
+    /** An empty graph. */
+    CommitGraph() {
+        _ids = new String[16];
+        _parents = new int[16];
+        _parents2 = new int[16];
+        _times = new long[16];
+        _generations = new int[16];
+        _positions = new HashMap<>();
+    }
+
+    /**
+     * Read the commit graph, building it from the commit objects if the
+     * repository does not have one yet.
+     * @return CommitGraph.
+     */
+    static CommitGraph read() {
+        File file = join(GRAPH);
+        if (!file.exists()) {
+            rebuild();
+        }
+        CommitGraph g = new CommitGraph();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(
+                        file.toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw error("Unknown commit-graph format.");
+            }
+            byte[] id = new byte[ID_BYTES];
+            while (true) {
+                try {
+                    in.readFully(id);
+                } catch (EOFException excp) {
+                    break;
+                }
+                g.add(unpad(id), in.readInt(), in.readInt(), in.readLong(),
+                        in.readInt());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return g;
+    }
+
+    /**
+     * Append the commit to the commit-graph file. Its parents must
+     * already be in the graph and the commit-id index.
+     * @param commit is the commit.
+     * @return its position, or NONE if the file was rebuilt.
+     */
+    static int append(Commit commit) {
+        File file = join(GRAPH);
+        if (!file.exists()) {
+            rebuild();
+            return NONE;
+        }
+        CommitIndex index = CommitIndex.read();
+        int k = index.position(commit.getSha1());
+        if (k != NONE) {
+            return k;
+        }
+        int p1 = index.position(commit.getParent());
+        int p2 = index.position(commit.getParent2());
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            int gen = 1 + Math.max(generation(raf, p1), generation(raf, p2));
+            long end = raf.length();
+            raf.seek(end);
+            raf.write(record(commit.getSha1(), p1, p2, commit.getTime(),
+                    gen));
+            return (int) ((end - HEADER) / RECORD);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Read the generation number of a record of the file.
+     * @param raf is the commit-graph file.
+     * @param k is the position of the record, or NONE.
+     * @return int, 0 for NONE.
+     * @throws IOException if it cannot be read.
+     */
+    private static int generation(RandomAccessFile raf, int k)
+        throws IOException {
+        if (k == NONE) {
+            return 0;
+        }
+        raf.seek(HEADER + (long) k * RECORD + ID_BYTES + 16);
+        return raf.readInt();
+    }
+
+    /** Write the commit-graph file from every commit in the index,
+     *  putting parents before their children. It is written to a
+     *  temporary file renamed into place, so a rebuild that fails never
+     *  leaves part of a graph. The positions in the commit-id index no
+     *  longer hold, so it is dropped, to be built again from the graph. */
+    private static void rebuild() {
+        CommitGraph g = new CommitGraph();
+        join(CommitIndex.IDS).delete();
+        File tmp = join(GRAPH + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(
+                        tmp.toPath())))) {
+            out.write(header());
+            g.write(out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            Files.move(tmp.toPath(), join(GRAPH).toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Add every commit in the index to this empty graph, putting parents
+     * before their children, and write their records.
+     * @param out is the commit-graph file, after its header.
+     * @throws IOException if it cannot be written.
+     */
+    private void write(DataOutputStream out) throws IOException {
+        ArrayDeque<Commit> stack = new ArrayDeque<>();
+        for (String id : ObjectStore.commits()) {
+            if (position(id) == NONE) {
+                stack.push(ObjectStore.read(id, Commit.class));
+            }
+            while (!stack.isEmpty()) {
+                Commit c = stack.peek();
+                String missing = null;
+                for (String p : new String[] {c.getParent(),
+                                              c.getParent2()}) {
+                    if (p != null && position(p) == NONE) {
+                        missing = p;
+                    }
+                }
+                if (missing != null) {
+                    stack.push(ObjectStore.read(missing, Commit.class));
+                } else {
+                    stack.pop();
+                    if (position(c.getSha1()) == NONE) {
+                        write(out, c);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Add the commit to this graph and write its record.
+     * @param out is the commit-graph file.
+     * @param commit is the commit.
+     * @throws IOException if it cannot be written.
+     */
+    private void write(DataOutputStream out, Commit commit)
+        throws IOException {
+        int p1 = position(commit.getParent());
+        int p2 = position(commit.getParent2());
+        int gen = 1 + Math.max(p1 == NONE ? 0 : _generations[p1],
+                p2 == NONE ? 0 : _generations[p2]);
+        out.write(record(commit.getSha1(), p1, p2, commit.getTime(), gen));
+        add(commit.getSha1(), p1, p2, commit.getTime(), gen);
+    }
+
+    /**
+     * Get the record of a commit.
+     * @param id is the commit id.
+     * @param p1 is the position of its first parent, or NONE.
+     * @param p2 is the position of its second parent, or NONE.
+     * @param time is its time in milliseconds.
+     * @param gen is its generation number.
+     * @return byte[].
+     */
+    private static byte[] record(String id, int p1, int p2, long time,
+                                 int gen) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.write(pad(id));
+            out.writeInt(p1);
+            out.writeInt(p2);
+            out.writeLong(time);
+            out.writeInt(gen);
+        } catch (IOException excp) {
+            throw error("Internal error writing commit-graph.");
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Add a commit to the graph, after its parents.
+     * @param id is the commit id.
+     * @param p1 is the position of its first parent, or NONE.
+     * @param p2 is the position of its second parent, or NONE.
+     * @param time is its time in milliseconds.
+     * @return its position.
+     */
+    int add(String id, int p1, int p2, long time) {
+        int gen = 1 + Math.max(p1 == NONE ? 0 : _generations[p1],
+                p2 == NONE ? 0 : _generations[p2]);
+        add(id, p1, p2, time, gen);
+        return _size - 1;
+    }
+
+    /**
+     * Add a commit to the graph.
+     * @param id is the commit id.
+     * @param p1 is the position of its first parent.
+     * @param p2 is the position of its second parent.
+     * @param time is its time in milliseconds.
+     * @param gen is its generation number.
+     */
+    private void add(String id, int p1, int p2, long time, int gen) {
+        if (_size == _ids.length) {
+            int n = 2 * _size;
+            _ids = Arrays.copyOf(_ids, n);
+            _parents = Arrays.copyOf(_parents, n);
+            _parents2 = Arrays.copyOf(_parents2, n);
+            _times = Arrays.copyOf(_times, n);
+            _generations = Arrays.copyOf(_generations, n);
+        }
+        _ids[_size] = id;
+        _parents[_size] = p1;
+        _parents2[_size] = p2;
+        _times[_size] = time;
+        _generations[_size] = gen;
+        _positions.put(id, _size);
+        _size += 1;
+    }
+
+    /**
+     * Get the number of commits.
+     * @return int.
+     */
+    int size() {
+        return _size;
+    }
+
+    /**
+     * Get the position of the commit in the graph.
+     * @param id is the commit id.
+     * @return int, or NONE if it is not in the graph.
+     */
+    int position(String id) {
+        Integer k = id == null ? null : _positions.get(id);
+        return k == null ? NONE : k;
+    }
+
+    /**
+     * Get the id of the commit at position K.
+     * @param k is the position.
+     * @return String.
+     */
+    String id(int k) {
+        return _ids[k];
+    }
+
+    /**
+     * Get the position of the first parent of the commit at position K.
+     * @param k is the position.
+     * @return int, or NONE.
+     */
+    int parent(int k) {
+        return _parents[k];
+    }
+
+    /**
+     * Get the position of the second parent of the commit at position K.
+     * @param k is the position.
+     * @return int, or NONE.
+     */
+    int parent2(int k) {
+        return _parents2[k];
+    }
+
+    /**
+     * Get the time of the commit at position K.
+     * @param k is the position.
+     * @return long.
+     */
+    long time(int k) {
+        return _times[k];
+    }
+
+    /**
+     * Get the generation number of the commit at position K.
+     * @param k is the position.
+     * @return int.
+     */
+    int generation(int k) {
+        return _generations[k];
+    }
+
+    /**
+     * Get the header of the file.
+     * @return byte[].
+     */
+    private static byte[] header() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+        } catch (IOException excp) {
+            throw error("Internal error writing commit-graph.");
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Get the id padded with zeros to the width of a record.
+     * @param id is the commit id.
+     * @return byte[].
+     */
+    private static byte[] pad(String id) {
+        return Arrays.copyOf(id.getBytes(StandardCharsets.US_ASCII),
+                ID_BYTES);
+    }
+
+    /**
+     * Get the id from its padded form.
+     * @param id is the padded id.
+     * @return String.
+     */
+    private static String unpad(byte[] id) {
+        int len = 0;
+        while (len < ID_BYTES && id[len] != 0) {
+            len += 1;
+        }
+        return new String(id, 0, len, StandardCharsets.US_ASCII);
+    }
+
+    /** The number of commits. */
+    private int _size;
+
+    /** The id of each commit. */
+    private String[] _ids;
+
+    /** The position of the first parent of each commit. */
+    private int[] _parents;
+
+    /** The position of the second parent of each commit. */
+    private int[] _parents2;
+
+    /** The time of each commit. */
+    private long[] _times;
+
+    /** The generation number of each commit. */
+    private int[] _generations;
+
+    /** The position of each commit id. */
+    private HashMap<String, Integer> _positions;
+}
@@ -0,0 +1,323 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static gitlet.Utils.*;
+
+/**
+ * A class for the commit-id index. The commit-ids file holds the id of
+ * every commit, padded to a fixed width, with the position of the commit
+ * in the commit graph. The first entries, as many as the header counts,
+ * are sorted by id, so an abbreviated id is resolved, and a commit found
+ * in the graph, with a binary search over the mapped file; new entries
+ * are appended after them unsorted and scanned. Once there are TAIL of
+ * those, or on repack, the file is rewritten sorted to a temporary file
+ * and renamed into place, so readers see either the old index or the
+ * new one.
+ * @author Ting Qi
+ */
+class CommitIndex {
+
+    /** The commit-id index file. */
+    static final String IDS = ".gitlet/commit-ids";
+
+    /** Magic number at the start of the file. */
+    private static final int MAGIC = 0x47434958;
+
+    /** Version of the file format. Version 1 had no positions. */
+    private static final int VERSION = 2;
+
+    /** Bytes used for each id. */
+    private static final int ID_BYTES = Utils.UID_LENGTH + 1;
+
+    /** Bytes used by each entry: id and position. */
+    private static final int ENTRY = ID_BYTES + 4;
+
+    /** Bytes used by the header: magic, version and count. */
+    private static final int HEADER = 12;
+
+    /** Most unsorted entries kept after the sorted ones. */
+    private static final int TAIL = 1024;
+
+    /**
+     * An index read from the mapped file contents.
+     * @param data is the contents.
+     */
+    private CommitIndex(ByteBuffer data) {
+        if (data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+            throw error("Unknown commit-id index format.");
+        }
+        _data = data;
+        _count = data.getInt(8);
+        _size = (data.limit() - HEADER) / ENTRY;
+    }
+
+    /**
+     * Read the index, building it from the commit graph if the
+     * repository does not have one yet or has one of an older version.
+     * @return CommitIndex.
+     */
+    static CommitIndex read() {
+        File file = join(IDS);
+        if (!file.exists() || header(file, 4) < VERSION) {
+            build();
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel ch = raf.getChannel();
+            return new CommitIndex(
+                    ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Add the commit id to the index, after the sorted ones. The index is
+     * sorted again first if too many are unsorted, so that the file is
+     * only rewritten with commits that are already made.
+     * @param id is the commit id.
+     * @param position is its position in the commit graph.
+     */
+    static void add(String id, int position) {
+        File file = join(IDS);
+        if (!file.exists() || header(file, 4) < VERSION) {
+            read();
+            return;
+        }
+        if ((file.length() - HEADER) / ENTRY - header(file, 8) >= TAIL) {
+            compact();
+        }
+        try {
+            Files.write(file.toPath(), entry(id, position),
+                    StandardOpenOption.APPEND);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Rewrite the index with every entry sorted. */
+    static void compact() {
+        CommitIndex index = read();
+        if (index._size == index._count) {
+            return;
+        }
+        TreeMap<String, Integer> ids = new TreeMap<>();
+        for (int k = 0; k < index._size; k += 1) {
+            ids.put(index.id(k), index.position(k));
+        }
+        write(ids);
+    }
+
+    /** Write the index from every commit in the commit graph. */
+    private static void build() {
+        CommitGraph g = CommitGraph.read();
+        TreeMap<String, Integer> ids = new TreeMap<>();
+        for (int k = 0; k < g.size(); k += 1) {
+            ids.put(g.id(k), k);
+        }
+        write(ids);
+    }
+
+    /**
+     * Get a number in the header of the index file.
+     * @param file is the index file.
+     * @param at is its offset: 4 for the version, 8 for the count.
+     * @return int.
+     */
+    private static int header(File file, int at) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(at);
+            return raf.readInt();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Get the ids of the commits starting with PREFIX, ignoring case.
+     * @param prefix is the abbreviated id.
+     * @param max is the most ids wanted; 2 is enough to tell an
+     *            ambiguous prefix from a unique one.
+     * @return List, in sorted order.
+     */
+    List<String> lookup(String prefix, int max) {
+        byte[] key = prefix.toLowerCase(Locale.ROOT)
+                .getBytes(StandardCharsets.US_ASCII);
+        List<String> result = new ArrayList<>();
+        if (key.length == 0 || key.length > ID_BYTES) {
+            return result;
+        }
+        for (int k = first(key); k < _count && result.size() < max
+                 && compare(k, key) == 0; k += 1) {
+            result.add(id(k));
+        }
+        if (_size > _count) {
+            for (int k = _count; k < _size; k += 1) {
+                if (compare(k, key) == 0) {
+                    result.add(id(k));
+                }
+            }
+            Collections.sort(result);
+            result = new ArrayList<>(result.subList(0,
+                    Math.min(max, result.size())));
+        }
+        return result;
+    }
+
+    /**
+     * Get the position of the commit in the commit graph.
+     * @param id is the commit id, or null.
+     * @return int, or CommitGraph.NONE if it is not in the index.
+     */
+    int position(String id) {
+        if (id == null) {
+            return CommitGraph.NONE;
+        }
+        byte[] key = pad(id);
+        int k = first(key);
+        if (k < _count && compare(k, key) == 0) {
+            return position(k);
+        }
+        for (k = _count; k < _size; k += 1) {
+            if (compare(k, key) == 0) {
+                return position(k);
+            }
+        }
+        return CommitGraph.NONE;
+    }
+
+    /**
+     * Get the first sorted entry whose id does not come before KEY.
+     * @param key is the prefix.
+     * @return int.
+     */
+    private int first(byte[] key) {
+        int lo = 0, hi = _count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(mid, key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Compare the first bytes of the Kth id with KEY.
+     * @param k is the entry number.
+     * @param key is the prefix.
+     * @return int.
+     */
+    private int compare(int k, byte[] key) {
+        int at = HEADER + k * ENTRY;
+        for (int i = 0; i < key.length; i += 1) {
+            int c = Byte.compare(_data.get(at + i), key[i]);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Get the Kth id.
+     * @param k is the entry number.
+     * @return String.
+     */
+    private String id(int k) {
+        int at = HEADER + k * ENTRY;
+        int len = 0;
+        while (len < ID_BYTES && _data.get(at + len) != 0) {
+            len += 1;
+        }
+        byte[] id = new byte[len];
+        _data.get(at, id);
+        return new String(id, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Get the position in the commit graph of the Kth entry.
+     * @param k is the entry number.
+     * @return int.
+     */
+    private int position(int k) {
+        return _data.getInt(HEADER + k * ENTRY + ID_BYTES);
+    }
+
+    /**
+     * Replace the index file with one holding IDS.
+     * @param ids is the position of every commit id, sorted by id.
+     */
+    private static void write(TreeMap<String, Integer> ids) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(ids.size());
+            for (Map.Entry<String, Integer> e : ids.entrySet()) {
+                out.write(entry(e.getKey(), e.getValue()));
+            }
+        } catch (IOException excp) {
+            throw error("Internal error writing commit-id index.");
+        }
+        File tmp = join(IDS + ".tmp");
+        writeContents(tmp, bytes.toByteArray());
+        try {
+            Files.move(tmp.toPath(), join(IDS).toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Transaction.rewritten(join(IDS));
+    }
+
+    /**
+     * Get the entry of the commit.
+     * @param id is the commit id.
+     * @param position is its position in the commit graph.
+     * @return byte[].
+     */
+    private static byte[] entry(String id, int position) {
+        return ByteBuffer.allocate(ENTRY).put(pad(id)).putInt(position)
+            .array();
+    }
+
+    /**
+     * Get the id padded with zeros to the width of an entry.
+     * @param id is the commit id.
+     * @return byte[].
+     */
+    private static byte[] pad(String id) {
+        return Arrays.copyOf(id.getBytes(StandardCharsets.US_ASCII),
+                ID_BYTES);
+    }
+
+    /** The mapped file. */
+    private final ByteBuffer _data;
+
+    /** The number of sorted entries. */
+    private final int _count;
+
+    /** The number of entries, sorted or not. */
+    private final int _size;
+}
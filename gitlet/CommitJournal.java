@@ -0,0 +1,133 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import static gitlet.Utils.*;
+
+/**
+ * A class for the commit journal. The journal file is appended one
+ * header record per commit, in the order commits were made: its id,
+ * parents, timestamp and message, which is all global-log prints. The
+ * file map of a commit is never in the journal.
+ * @author Ting Qi
+ */
+class CommitJournal {
+
+    /** The journal file. */
+    static final String JOURNAL = ".gitlet/journal";
+
+    /** Magic number at the start of the file. */
+    private static final int MAGIC = 0x474a524e;
+
+    /** Version of the file format. */
+    private static final int VERSION = 1;
+
+    /** Size of the output buffer. */
+    private static final int BUFFER = Utils.CHUNK_SIZE;
+
+    /**
+     * Append the commit to the journal.
+     * @param commit is the commit.
+     */
+    static void append(Commit commit) {
+        if (!join(JOURNAL).exists()) {
+            rebuild();
+            return;
+        }
+        try {
+            Files.write(join(JOURNAL).toPath(), record(commit),
+                    StandardOpenOption.APPEND);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Print the log entry of every commit in the journal to standard
+     *  output, reading the journal once. */
+    static void print() {
+        File file = join(JOURNAL);
+        if (!file.exists()) {
+            rebuild();
+        }
+        StringBuilder entry = new StringBuilder();
+        OutputStream stdout = new BufferedOutputStream(System.out, BUFFER);
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(
+                        file.toPath()), BUFFER))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw error("Unknown journal format.");
+            }
+            while (true) {
+                String id;
+                try {
+                    id = in.readUTF();
+                } catch (EOFException excp) {
+                    break;
+                }
+                String parent = in.readUTF();
+                String parent2 = in.readUTF();
+                String timestamp = in.readUTF();
+                byte[] msg = new byte[in.readInt()];
+                in.readFully(msg);
+                entry.setLength(0);
+                Commit.format(entry, id, parent.isEmpty() ? null : parent,
+                        parent2.isEmpty() ? null : parent2, timestamp,
+                        new String(msg, StandardCharsets.UTF_8));
+                stdout.write(entry.toString()
+                        .getBytes(StandardCharsets.UTF_8));
+            }
+            stdout.flush();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Write the journal from every commit in the commit index. */
+    private static void rebuild() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (String id : ObjectStore.commits()) {
+                out.write(record(ObjectStore.read(id, Commit.class)));
+            }
+        } catch (IOException excp) {
+            throw error("Internal error writing journal.");
+        }
+        writeContents(join(JOURNAL), bytes.toByteArray());
+    }
+
+    /**
+     * Get the journal record of the commit.
+     * @param commit is the commit.
+     * @return byte[].
+     */
+    private static byte[] record(Commit commit) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            byte[] msg = commit.getMessage().getBytes(StandardCharsets.UTF_8);
+            out.writeUTF(commit.getSha1());
+            out.writeUTF(commit.getParent() == null ? ""
+                    : commit.getParent());
+            out.writeUTF(commit.getParent2() == null ? ""
+                    : commit.getParent2());
+            out.writeUTF(commit.getTimestamp());
+            out.writeInt(msg.length);
+            out.write(msg);
+        } catch (IOException excp) {
+            throw error("Internal error writing journal.");
+        }
+        return bytes.toByteArray();
+    }
+}
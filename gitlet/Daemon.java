@@ -0,0 +1,268 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static gitlet.Utils.*;
+
+/**
+ * A class for the resident daemon. "gitlet daemon" listens on a Unix
+ * domain socket in .gitlet and runs the commands sent to it one at a
+ * time in the same JVM, so class loading, the JIT, the mapped packs and
+ * the blob cache are paid for once rather than per command. While it is
+ * running, Main forwards its arguments to it and copies back what the
+ * command printed; if the socket is missing or nothing is listening,
+ * Main runs the command itself. "gitlet daemon stop" stops it. A
+ * command that fails with an error other than a GitletException is
+ * reported to its client in one line, with exit status 1, and the
+ * daemon goes on serving.
+ * A request is the number of arguments followed by each argument, as
+ * Codec writes them. The reply is a sequence of frames, each a type
+ * byte and a length-prefixed run of bytes: standard output, standard
+ * error, and last the exit status.
+ * @author Ting Qi
+ */
+class Daemon {
+
+    /** The socket the daemon listens on. */
+    static final String SOCKET = ".gitlet/daemon.sock";
+
+    /** Frame of standard output. */
+    private static final int OUT = 'O';
+
+    /** Frame of standard error. */
+    private static final int ERR = 'E';
+
+    /** Last frame of a reply, holding the exit status. */
+    private static final int EXIT = 'X';
+
+    /**
+     * Run the command on the daemon of the repository, if one is
+     * running, and exit with its status. A batch read from standard
+     * input is not forwarded, as the daemon cannot read it.
+     * @param args is the arguments of Main.
+     * @return false if there is no daemon to run it.
+     */
+    static boolean forward(String... args) {
+        Path path = join(SOCKET).toPath();
+        if (!Files.exists(path) || args.length == 2
+                && args[0].equals("batch") && args[1].equals("-")) {
+            return false;
+        }
+        SocketChannel ch;
+        try {
+            ch = SocketChannel.open(UnixDomainSocketAddress.of(path));
+        } catch (IOException excp) {
+            return false;
+        }
+        int status;
+        try (ch) {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(ch)));
+            Codec.writeVarint(out, args.length);
+            for (String arg : args) {
+                Codec.writeString(out, arg);
+            }
+            out.flush();
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    Channels.newInputStream(ch), Utils.CHUNK_SIZE));
+            status = copy(in);
+        } catch (IOException excp) {
+            System.out.flush();
+            System.err.println("Lost connection to the daemon.");
+            status = 1;
+        }
+        System.out.flush();
+        System.err.flush();
+        if (status != 0) {
+            System.exit(status);
+        }
+        return true;
+    }
+
+    /**
+     * Copy the frames of a reply to standard output and error.
+     * @param in is the reply.
+     * @return the exit status.
+     * @throws IOException if the reply is cut short.
+     */
+    private static int copy(DataInputStream in) throws IOException {
+        byte[] buf = new byte[Utils.CHUNK_SIZE];
+        while (true) {
+            int type = in.readUnsignedByte();
+            int n = (int) Codec.readVarint(in);
+            if (type == EXIT) {
+                return n;
+            }
+            PrintStream dest = type == ERR ? System.err : System.out;
+            while (n > 0) {
+                int k = in.read(buf, 0, Math.min(n, buf.length));
+                if (k < 0) {
+                    throw new IOException("Truncated reply.");
+                }
+                dest.write(buf, 0, k);
+                n -= k;
+            }
+        }
+    }
+
+    /** Listen on the socket and run commands until stopped. */
+    static void serve() {
+        if (!join(".gitlet").exists()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        Path path = join(SOCKET).toPath();
+        PrintStream stdout = System.out, stderr = System.err;
+        try (ServerSocketChannel server =
+                 ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            Files.deleteIfExists(path);
+            server.bind(UnixDomainSocketAddress.of(path));
+            stdout.println("Listening on " + SOCKET + ".");
+            boolean running = true;
+            while (running) {
+                try (SocketChannel ch = server.accept()) {
+                    running = handle(ch);
+                } catch (IOException excp) {
+                    continue;
+                } finally {
+                    System.setOut(stdout);
+                    System.setErr(stderr);
+                }
+            }
+        } catch (IOException excp) {
+            throw error("Cannot listen on %s: %s", SOCKET, excp.getMessage());
+        } finally {
+            path.toFile().delete();
+        }
+    }
+
+    /**
+     * Run one command sent by a client, with its standard output and
+     * error sent back to it.
+     * @param ch is the connection to the client.
+     * @return false if the daemon was asked to stop.
+     * @throws IOException if the client cannot be read or written.
+     */
+    private static boolean handle(SocketChannel ch) throws IOException {
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Channels.newInputStream(ch)));
+        String[] args = new String[(int) Codec.readVarint(in)];
+        for (int i = 0; i < args.length; i += 1) {
+            args[i] = Codec.readString(in);
+        }
+        DataOutputStream reply = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(ch),
+                        Utils.CHUNK_SIZE));
+        PrintStream out = new PrintStream(new Frames(reply, OUT));
+        PrintStream err = new PrintStream(new Frames(reply, ERR));
+        System.setOut(out);
+        System.setErr(err);
+        boolean running = true;
+        int status = 0;
+        if (args.length > 0 && args[0].equals("daemon")) {
+            if (args.length > 1 && args[1].equals("stop")) {
+                running = false;
+            } else {
+                System.out.println("A daemon is already running.");
+            }
+        } else {
+            Pack.refresh();
+            try {
+                Main.run(args);
+            } catch (RuntimeException | Error excp) {
+                Main.report(excp);
+                status = 1;
+            }
+        }
+        out.flush();
+        err.flush();
+        reply.write(EXIT);
+        Codec.writeVarint(reply, status);
+        reply.flush();
+        return running;
+    }
+
+    /** An output stream sending what is written as frames of one type. */
+    private static class Frames extends OutputStream {
+
+        /**
+         * A stream of frames of type TYPE.
+         * @param out is the connection to the client.
+         * @param type is the frame type.
+         */
+        Frames(DataOutputStream out, int type) {
+            _out = out;
+            _type = type;
+            _buf = new byte[Utils.CHUNK_SIZE];
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (_size == _buf.length) {
+                flush();
+            }
+            _buf[_size] = (byte) b;
+            _size += 1;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (_size + len > _buf.length) {
+                flush();
+            }
+            if (len > _buf.length) {
+                frame(b, off, len);
+            } else {
+                System.arraycopy(b, off, _buf, _size, len);
+                _size += len;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (_size > 0) {
+                frame(_buf, 0, _size);
+                _size = 0;
+            }
+        }
+
+        /**
+         * Send the bytes as one frame.
+         * @param b is the bytes.
+         * @param off is the offset of the first one.
+         * @param len is how many to send.
+         * @throws IOException if they cannot be sent.
+         */
+        private void frame(byte[] b, int off, int len) throws IOException {
+            _out.write(_type);
+            Codec.writeVarint(_out, len);
+            _out.write(b, off, len);
+            _out.flush();
+        }
+
+        /** The connection to the client. */
+        private final DataOutputStream _out;
+
+        /** The frame type. */
+        private final int _type;
+
+        /** The bytes not yet sent. */
+        private final byte[] _buf;
+
+        /** How many bytes of _buf are in use. */
+        private int _size;
+    }
+}
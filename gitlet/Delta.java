@@ -0,0 +1,175 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+
+/**
+ * A class for binary deltas between two versions of a file. A delta is
+ * the length of the target followed by a list of instructions, each one
+ * either copying a range of the base or inserting literal bytes.
+ * @author Ting Qi
+ */
+class Delta {
+
+    /** Instruction that copies a range of the base. */
+    private static final int COPY = 0;
+
+    /** Instruction that inserts literal bytes. */
+    private static final int INSERT = 1;
+
+    /** Size of the blocks of the base that are indexed. */
+    private static final int BLOCK = 16;
+
+    /**
+     * Return a delta that turns BASE into TARGET.
+     * @param base is the base contents.
+     * @param target is the target contents.
+     * @return byte[].
+     */
+    static byte[] create(byte[] base, byte[] target) {
+        HashMap<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(hash(base, i), i);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, target.length);
+        int pending = 0;
+        int i = 0;
+        while (i + BLOCK <= target.length) {
+            Integer at = blocks.get(hash(target, i));
+            if (at == null || !same(base, at, target, i, BLOCK)) {
+                i += 1;
+                continue;
+            }
+            int start = at, len = BLOCK;
+            while (start > 0 && i > pending
+                    && base[start - 1] == target[i - 1]) {
+                start -= 1;
+                i -= 1;
+                len += 1;
+            }
+            while (start + len < base.length && i + len < target.length
+                    && base[start + len] == target[i + len]) {
+                len += 1;
+            }
+            insert(out, target, pending, i);
+            out.write(COPY);
+            writeVarint(out, start);
+            writeVarint(out, len);
+            i += len;
+            pending = i;
+        }
+        insert(out, target, pending, target.length);
+        return out.toByteArray();
+    }
+
+    /**
+     * Return the result of applying DELTA to BASE.
+     * @param base is the base contents.
+     * @param delta is the delta.
+     * @return byte[].
+     */
+    static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = {0};
+        byte[] result = new byte[readVarint(delta, pos)];
+        int n = 0;
+        while (pos[0] < delta.length) {
+            int op = delta[pos[0]++];
+            if (op == COPY) {
+                int start = readVarint(delta, pos);
+                int len = readVarint(delta, pos);
+                System.arraycopy(base, start, result, n, len);
+                n += len;
+            } else if (op == INSERT) {
+                int len = readVarint(delta, pos);
+                System.arraycopy(delta, pos[0], result, n, len);
+                pos[0] += len;
+                n += len;
+            } else {
+                throw Utils.error("Corrupt delta.");
+            }
+        }
+        if (n != result.length) {
+            throw Utils.error("Corrupt delta.");
+        }
+        return result;
+    }
+
+    /**
+     * Write an instruction inserting TARGET[FROM..TO), if it is not empty.
+     * @param out is the delta being written.
+     * @param target is the target contents.
+     * @param from is the first byte to insert.
+     * @param to is one past the last byte to insert.
+     */
+    private static void insert(ByteArrayOutputStream out, byte[] target,
+                               int from, int to) {
+        if (from < to) {
+            out.write(INSERT);
+            writeVarint(out, to - from);
+            out.write(target, from, to - from);
+        }
+    }
+
+    /**
+     * Return the hash of the block of B starting at START.
+     * @param b is the contents.
+     * @param start is the start of the block.
+     * @return int.
+     */
+    private static int hash(byte[] b, int start) {
+        int h = 0;
+        for (int k = start; k < start + BLOCK; k += 1) {
+            h = 31 * h + b[k];
+        }
+        return h;
+    }
+
+    /**
+     * Check if the LEN bytes of A at I equal those of B at J.
+     * @param a is the first contents.
+     * @param i is the start in A.
+     * @param b is the second contents.
+     * @param j is the start in B.
+     * @param len is the number of bytes.
+     * @return boolean.
+     */
+    private static boolean same(byte[] a, int i, byte[] b, int j, int len) {
+        for (int k = 0; k < len; k += 1) {
+            if (a[i + k] != b[j + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Write the non-negative value V as a varint.
+     * @param out is the stream.
+     * @param v is the value.
+     */
+    private static void writeVarint(ByteArrayOutputStream out, int v) {
+        while ((v & ~0x7f) != 0) {
+            out.write((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        out.write(v);
+    }
+
+    /**
+     * Read a varint from B at POS[0], advancing POS[0] past it.
+     * @param b is the contents.
+     * @param pos is the position.
+     * @return int.
+     */
+    private static int readVarint(byte[] b, int[] pos) {
+        int v = 0;
+        for (int shift = 0;; shift += 7) {
+            int c = b[pos[0]++];
+            v |= (c & 0x7f) << shift;
+            if ((c & 0x80) == 0) {
+                return v;
+            }
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package gitlet;
 
+import java.util.Arrays;
+
 /** Driver class for Gitlet, the tiny stupid version-control system.
  *  @author Ting Qi
  */
@@ -7,12 +9,77 @@ public class Main {
 
     /** Usage: java gitlet.Main ARGS, where ARGS contains.
      *  <COMMAND> <OPERAND> ....tp
-     *  java gitlet.Main add hello.txt*/
+     *  java gitlet.Main add hello.txt
+     *  The command runs on the daemon of the repository if one is
+     *  running. */
     public static void main(String... args) {
+        if (!Daemon.forward(args)) {
+            run(args);
+        }
+    }
+
+    /** Run the command ARGS in this JVM, tracing it if ARGS starts with
+     *  a trace option or the environment asks for it. */
+    static void run(String... args) {
+        args = Trace.begin(args);
+        try {
+            runCommand(args);
+        } finally {
+            Trace.end();
+        }
+    }
+
+    /** Run the command ARGS in this JVM. */
+    private static void runCommand(String... args) {
+        if (args.length > 0 && args[0].equals("daemon")) {
+            if (args.length > 1 && args[1].equals("stop")) {
+                System.out.println("No daemon is running.");
+            } else {
+                Daemon.serve();
+            }
+            return;
+        }
         Commands cmd = new Commands();
+        if (run(cmd, args)) {
+            cmd.close();
+        }
+    }
+
+    /** Run the command ARGS on CMD in a transaction of its own,
+     *  printing the message of any GitletException it ends with. Return
+     *  false if it ended with one, and then its changes are not made. */
+    static boolean run(Commands cmd, String... args) {
+        long start = Trace.start();
+        Transaction tx = Transaction.begin();
+        try {
+            dispatch(cmd, args);
+            tx.commit();
+            return true;
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+            return false;
+        } finally {
+            tx.close();
+            if (args.length > 0) {
+                Trace.end("command " + args[0], start);
+            }
+        }
+    }
+
+    /** Print EXCP, an error a command ended with that is not a
+     *  GitletException, such as a missing operand, as one line rather
+     *  than a stack trace, for a daemon or batch that goes on running. */
+    static void report(Throwable excp) {
+        String msg = excp.getMessage();
+        System.out.println("Internal error: "
+                + (msg == null ? excp.getClass().getSimpleName() : msg));
+    }
+
+    /** Run the command ARGS on CMD. */
+    private static void dispatch(Commands cmd, String... args) {
         if (args.length == 0) {
             System.out.println("Please enter a command.");
-            System.exit(0);
+            return;
         } else if (args[0].equals("init")) {
             cmd.init();
         } else if (args[0].equals("log")) {
@@ -22,13 +89,17 @@ public class Main {
         } else if (args[0].equals("status")) {
             cmd.status();
         } else if (args[0].equals("add")) {
-            cmd.add(args[1]);
+            cmd.add(Arrays.copyOfRange(args, 1, args.length));
         } else if (args[0].equals("commit")) {
             cmd.commit(args[1]);
         } else if (args[0].equals("rm")) {
             cmd.rm(args[1]);
         } else if (args[0].equals("find")) {
-            cmd.find(args[1]);
+            if (args.length == 3 && args[1].equals("--words")) {
+                cmd.findWords(args[2]);
+            } else {
+                cmd.find(args[1]);
+            }
         } else if (args[0].equals("checkout")) {
             cmd.checkout(args);
         } else if (args[0].equals("branch")) {
@@ -39,9 +110,12 @@ public class Main {
             cmd.reset(args[1]);
         } else if (args[0].equals("merge")) {
             cmd.merge(args[1]);
+        } else if (args[0].equals("repack")) {
+            cmd.repack();
+        } else if (args[0].equals("batch") && args.length == 2) {
+            Batch.run(args[1]);
         } else {
             System.out.println("No command with that name exists.");
-            System.exit(0);
         }
     }
 }
@@ -0,0 +1,163 @@
+package gitlet;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * A class for finding merge bases in the commit graph. Both commits are
+ * walked together towards the root, following both parents, in order of
+ * decreasing generation number. Each commit is marked with the sides that
+ * reach it; a commit reached from both sides is a common ancestor, and
+ * its own ancestors are marked stale so the walk can stop as soon as
+ * nothing but stale commits is left to visit.
+ * @author Ting Qi
+ */
+class MergeBase {
+
+    /**
+     * Get the best common ancestors of the commits at positions A and B:
+     * the common ancestors that are not ancestors of another one, highest
+     * generation (then latest) first. There are several only when the
+     * history has criss-cross merges.
+     * @param g is the commit graph.
+     * @param a is the position of the first commit.
+     * @param b is the position of the second commit.
+     * @return the positions, empty if the commits share no history.
+     */
+    static int[] bases(CommitGraph g, int a, int b) {
+        if (a == b) {
+            return new int[] {a};
+        }
+        long start = Trace.start();
+        BitSet side1 = new BitSet(), side2 = new BitSet();
+        BitSet stale = new BitSet(), queued = new BitSet();
+        BitSet done = new BitSet();
+        PriorityQueue<Integer> queue = new PriorityQueue<>(order(g));
+        side1.set(a);
+        side2.set(b);
+        queue.add(a);
+        queue.add(b);
+        queued.set(a);
+        queued.set(b);
+        int live = 2;
+        ArrayList<Integer> found = new ArrayList<>();
+        while (live > 0) {
+            int k = queue.poll();
+            done.set(k);
+            boolean in1 = side1.get(k), in2 = side2.get(k);
+            boolean isStale = stale.get(k);
+            if (!isStale) {
+                live -= 1;
+                if (in1 && in2) {
+                    found.add(k);
+                    isStale = true;
+                }
+            }
+            for (int p : new int[] {g.parent(k), g.parent2(k)}) {
+                if (p == CommitGraph.NONE) {
+                    continue;
+                }
+                if (in1) {
+                    side1.set(p);
+                }
+                if (in2) {
+                    side2.set(p);
+                }
+                if (isStale && !stale.get(p)) {
+                    stale.set(p);
+                    if (queued.get(p) && !done.get(p)) {
+                        live -= 1;
+                    }
+                }
+                if (!queued.get(p)) {
+                    queued.set(p);
+                    queue.add(p);
+                    if (!stale.get(p)) {
+                        live += 1;
+                    }
+                }
+            }
+        }
+        int[] result = best(g, found);
+        Trace.end(Trace.MERGE_BASES, start, 0);
+        return result;
+    }
+
+    /**
+     * Check if the commit at position ANC is an ancestor of (or is) the
+     * commit at position DESC. Commits with a lower generation than ANC
+     * are never visited.
+     * @param g is the commit graph.
+     * @param anc is the position of the possible ancestor.
+     * @param desc is the position of the possible descendant.
+     * @return boolean.
+     */
+    static boolean isAncestor(CommitGraph g, int anc, int desc) {
+        long start = Trace.start();
+        int floor = g.generation(anc);
+        BitSet seen = new BitSet();
+        ArrayDeque<Integer> work = new ArrayDeque<>();
+        work.push(desc);
+        seen.set(desc);
+        while (!work.isEmpty()) {
+            int k = work.pop();
+            if (k == anc) {
+                Trace.end(Trace.IS_ANCESTOR, start, 0);
+                return true;
+            }
+            for (int p : new int[] {g.parent(k), g.parent2(k)}) {
+                if (p != CommitGraph.NONE && !seen.get(p)
+                        && g.generation(p) >= floor) {
+                    seen.set(p);
+                    work.push(p);
+                }
+            }
+        }
+        Trace.end(Trace.IS_ANCESTOR, start, 0);
+        return false;
+    }
+
+    /**
+     * Drop the commits in FOUND that are ancestors of another one and
+     * sort the rest, highest generation (then latest) first.
+     * @param g is the commit graph.
+     * @param found is the common ancestors.
+     * @return int[].
+     */
+    private static int[] best(CommitGraph g, ArrayList<Integer> found) {
+        ArrayList<Integer> result = new ArrayList<>();
+        for (int c : found) {
+            boolean redundant = false;
+            for (int other : found) {
+                if (other != c && isAncestor(g, c, other)) {
+                    redundant = true;
+                    break;
+                }
+            }
+            if (!redundant) {
+                result.add(c);
+            }
+        }
+        result.sort(order(g));
+        return result.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Get the order in which commits are visited: highest generation
+     * first, then latest, then last made.
+     * @param g is the commit graph.
+     * @return Comparator.
+     */
+    private static Comparator<Integer> order(CommitGraph g) {
+        return (x, y) -> {
+            int c = Integer.compare(g.generation(y), g.generation(x));
+            if (c == 0) {
+                c = Long.compare(g.time(y), g.time(x));
+            }
+            return c != 0 ? c : Integer.compare(y, x);
+        };
+    }
+}
@@ -0,0 +1,251 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import static gitlet.Utils.*;
+
+/**
+ * A class for the message index, an inverted index from each exact
+ * message, and each word of a message, to the commits that have it. Its
+ * postings are kept in BUCKETS files under messages/exact and
+ * messages/words, chosen by the hash of the message or word, as the
+ * object store spreads objects over fan-out directories. Each file is
+ * appended one record per posting, the message or word and a commit id,
+ * in the order commits were made, so find reads only the file of the
+ * message, or of each word of the query, and never opens a commit
+ * object.
+ * @author Ting Qi
+ */
+class MessageIndex {
+
+    /** The message index directory. */
+    static final String MESSAGES = ".gitlet/messages";
+
+    /** Directory of the postings of exact messages. */
+    private static final String EXACT = "exact";
+
+    /** Directory of the postings of words. */
+    private static final String WORDS = "words";
+
+    /** Number of postings files in each directory. */
+    private static final int BUCKETS = 256;
+
+    /** Magic number at the start of a postings file. */
+    private static final int MAGIC = 0x474d5358;
+
+    /** Version of the file format. Version 1 was a single file of
+     *  messages. */
+    private static final int VERSION = 2;
+
+    /**
+     * Get the commits with exactly the message.
+     * @param msg is the message.
+     * @return List, in the order the commits were made.
+     */
+    static List<String> exact(String msg) {
+        return new ArrayList<>(postings(EXACT, msg));
+    }
+
+    /**
+     * Get the commits whose messages contain every word of QUERY,
+     * ignoring case and punctuation.
+     * @param query is the words.
+     * @return List, in the order the commits were made.
+     */
+    static List<String> words(String query) {
+        Set<String> found = null;
+        List<String> words = words(query, new ArrayList<>());
+        for (String w : new LinkedHashSet<>(words)) {
+            Set<String> posting = postings(WORDS, w);
+            if (found == null) {
+                found = posting;
+            } else {
+                found.retainAll(posting);
+            }
+            if (found.isEmpty()) {
+                break;
+            }
+        }
+        return found == null ? new ArrayList<>() : new ArrayList<>(found);
+    }
+
+    /**
+     * Get the postings files the commit will be appended to, building
+     * the index first if the repository does not have one of this
+     * version, so the commit is only ever appended.
+     * @param commit is the commit.
+     * @return List.
+     */
+    static List<File> files(Commit commit) {
+        if (!join(MESSAGES).isDirectory()) {
+            rebuild();
+        }
+        String msg = commit.getMessage();
+        List<File> result = new ArrayList<>();
+        result.add(bucket(MESSAGES, EXACT, msg));
+        for (String w : new HashSet<>(words(msg, new ArrayList<>()))) {
+            result.add(bucket(MESSAGES, WORDS, w));
+        }
+        return result;
+    }
+
+    /**
+     * Append the postings of the commit to the message index.
+     * @param commit is the commit.
+     */
+    static void append(Commit commit) {
+        if (!join(MESSAGES).isDirectory()) {
+            rebuild();
+            return;
+        }
+        add(MESSAGES, commit);
+    }
+
+    /** Write the message index from every commit in the commit index,
+     *  replacing one of an older version. It is written to a temporary
+     *  directory renamed into place, so it is never seen half-built. */
+    private static void rebuild() {
+        File tmp = join(MESSAGES + ".tmp");
+        for (String kind : new String[] {EXACT, WORDS}) {
+            File sub = join(tmp, kind);
+            sub.mkdirs();
+            for (String name : plainFilenamesIn(sub)) {
+                join(sub, name).delete();
+            }
+        }
+        for (String id : ObjectStore.commits()) {
+            add(tmp.getPath(), ObjectStore.read(id, Commit.class));
+        }
+        join(MESSAGES).delete();
+        if (!tmp.renameTo(join(MESSAGES))) {
+            throw error("Cannot write message index.");
+        }
+        for (String kind : new String[] {EXACT, WORDS}) {
+            for (String name : plainFilenamesIn(join(MESSAGES, kind))) {
+                Transaction.sync(join(MESSAGES, kind, name));
+            }
+        }
+    }
+
+    /**
+     * Append the postings of the commit: one for its message and one for
+     * each different word in it.
+     * @param root is the message index directory.
+     * @param commit is the commit.
+     */
+    private static void add(String root, Commit commit) {
+        String msg = commit.getMessage();
+        append(bucket(root, EXACT, msg), msg, commit.getSha1());
+        for (String w : new HashSet<>(words(msg, new ArrayList<>()))) {
+            append(bucket(root, WORDS, w), w, commit.getSha1());
+        }
+    }
+
+    /**
+     * Append a posting to the file of its key.
+     * @param file is the postings file of the key.
+     * @param key is the message or word.
+     * @param id is the commit id.
+     */
+    private static void append(File file, String key, String id) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            if (!file.exists()) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+            }
+            Codec.writeString(out, key);
+            Codec.writeString(out, id);
+        } catch (IOException excp) {
+            throw error("Internal error writing message index.");
+        }
+        try {
+            Files.write(file.toPath(), bytes.toByteArray(),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Get the commits posted under the key, building the index if the
+     * repository does not have one of this version.
+     * @param kind is EXACT or WORDS.
+     * @param key is the message or word.
+     * @return Set, in the order the commits were made.
+     */
+    private static Set<String> postings(String kind, String key) {
+        if (!join(MESSAGES).isDirectory()) {
+            rebuild();
+        }
+        Set<String> ids = new LinkedHashSet<>();
+        File file = bucket(MESSAGES, kind, key);
+        if (!file.exists()) {
+            return ids;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(readContents(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw error("Unknown message index format.");
+            }
+            while (true) {
+                String k;
+                try {
+                    k = Codec.readString(in);
+                } catch (EOFException excp) {
+                    break;
+                }
+                String id = Codec.readString(in);
+                if (key.equals(k)) {
+                    ids.add(id);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return ids;
+    }
+
+    /**
+     * Get the postings file of the key.
+     * @param root is the message index directory.
+     * @param kind is EXACT or WORDS.
+     * @param key is the message or word.
+     * @return File.
+     */
+    private static File bucket(String root, String kind, String key) {
+        return join(root, kind, String.format("%02x",
+                Math.floorMod(key.hashCode(), BUCKETS)));
+    }
+
+    /**
+     * Add the words of the text to RESULT: its runs of letters and
+     * digits, in lower case.
+     * @param text is the text.
+     * @param result is the list of words.
+     * @return RESULT.
+     */
+    private static List<String> words(String text, List<String> result) {
+        for (String w : text.toLowerCase(Locale.ROOT)
+                 .split("[^\\p{L}\\p{N}]+")) {
+            if (!w.isEmpty()) {
+                result.add(w);
+            }
+        }
+        return result;
+    }
+}
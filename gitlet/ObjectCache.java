@@ -0,0 +1,163 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * A class for caches of immutable objects read from the object store,
+ * keyed by object id. A cache holds at most a fixed number of bytes, as
+ * estimated by its weigher, and evicts the least recently used objects
+ * to stay within them, so it stays bounded in a long-running process
+ * such as the daemon. An object weighing more than a quarter of the
+ * cache is not kept. It counts its hits, misses and evictions. It may
+ * be used from many threads at once.
+ * @param <V> is the type of the cached objects.
+ * @author Ting Qi
+ */
+class ObjectCache<V> {
+
+    /**
+     * A cache.
+     * @param name is its name in statistics.
+     * @param capacity is the most bytes it holds.
+     * @param weigher gives the estimated size of an object in bytes.
+     */
+    ObjectCache(String name, long capacity, ToLongFunction<V> weigher) {
+        _name = name;
+        _capacity = capacity;
+        _weigher = weigher;
+        synchronized (ALL) {
+            ALL.add(this);
+        }
+    }
+
+    /**
+     * Get the object, counting a hit or a miss.
+     * @param id is the object id.
+     * @return V, or null if it is not cached.
+     */
+    synchronized V get(String id) {
+        Entry<V> e = _map.get(id);
+        if (e == null) {
+            _misses += 1;
+            return null;
+        }
+        _hits += 1;
+        return e._value;
+    }
+
+    /**
+     * Cache the object, evicting the least recently used objects to
+     * stay within the capacity.
+     * @param id is the object id.
+     * @param value is the object.
+     */
+    synchronized void put(String id, V value) {
+        long weight = _weigher.applyAsLong(value);
+        if (weight > _capacity / 4) {
+            return;
+        }
+        Entry<V> old = _map.put(id, new Entry<>(value, weight));
+        if (old != null) {
+            _bytes -= old._weight;
+        }
+        _bytes += weight;
+        Iterator<Entry<V>> it = _map.values().iterator();
+        while (_bytes > _capacity && it.hasNext()) {
+            _bytes -= it.next()._weight;
+            it.remove();
+            _evictions += 1;
+        }
+    }
+
+    /**
+     * Get the statistics of the cache in one line.
+     * @return String.
+     */
+    synchronized String stats() {
+        return String.format("%s: %d hits, %d misses, %d evictions, "
+                + "%d objects, %d of %d bytes", _name, _hits, _misses,
+                _evictions, _map.size(), _bytes, _capacity);
+    }
+
+    /**
+     * Get the statistics as a JSON object.
+     * @return String.
+     */
+    synchronized String json() {
+        return String.format("{\"hits\": %d, \"misses\": %d, "
+                + "\"evictions\": %d, \"objects\": %d, \"bytes\": %d, "
+                + "\"capacity\": %d}", _hits, _misses, _evictions,
+                _map.size(), _bytes, _capacity);
+    }
+
+    /**
+     * Get the name.
+     * @return String.
+     */
+    String name() {
+        return _name;
+    }
+
+    /**
+     * Get every cache made.
+     * @return List.
+     */
+    static List<ObjectCache<?>> all() {
+        synchronized (ALL) {
+            return new ArrayList<>(ALL);
+        }
+    }
+
+    /** An object with its weight. */
+    private static class Entry<V> {
+
+        /**
+         * An entry.
+         * @param value is the object.
+         * @param weight is its weight.
+         */
+        Entry(V value, long weight) {
+            _value = value;
+            _weight = weight;
+        }
+
+        /** The object. */
+        private final V _value;
+
+        /** Its weight. */
+        private final long _weight;
+    }
+
+    /** Every cache made. */
+    private static final List<ObjectCache<?>> ALL = new ArrayList<>();
+
+    /** The name. */
+    private final String _name;
+
+    /** The most bytes held. */
+    private final long _capacity;
+
+    /** Gives the size of an object. */
+    private final ToLongFunction<V> _weigher;
+
+    /** The objects, least recently used first. */
+    private final Map<String, Entry<V>> _map =
+        new LinkedHashMap<>(16, 0.75f, true);
+
+    /** The bytes held. */
+    private long _bytes;
+
+    /** Lookups that found their object. */
+    private long _hits;
+
+    /** Lookups that did not. */
+    private long _misses;
+
+    /** Objects evicted. */
+    private long _evictions;
+}
@@ -0,0 +1,252 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static gitlet.Utils.*;
+
+/**
+ * A class for the object store. Loose objects live in two-character
+ * fan-out directories under .gitlet/objects, repacked objects live in
+ * pack files under .gitlet/objects/pack, and the ids of all commits are
+ * kept in a separate index so that listing commits never touches blobs.
+ * @author Ting Qi
+ */
+class ObjectStore {
+
+    /** The object directory. */
+    static final String OBJECTS = ".gitlet/objects";
+
+    /** The commit index, one commit id per line. */
+    static final String COMMITS = ".gitlet/commits";
+
+    /** Length of the fan-out directory names. */
+    private static final int FANOUT = 2;
+
+    /** Most bytes of decoded objects cached. */
+    private static final long CACHE_BYTES = 32 << 20;
+
+    /** Decoded commits and trees, which never change once written. A
+     *  cached commit is handed out as a copy, since reading its files
+     *  fills in its map. */
+    private static final ObjectCache<Serializable> CACHE =
+        new ObjectCache<>("objects", CACHE_BYTES, ObjectStore::weight);
+
+    /**
+     * Get the file that holds the object.
+     * @param id is the object id.
+     * @return File.
+     */
+    static File file(String id) {
+        return join(OBJECTS, id.substring(0, FANOUT), id.substring(FANOUT));
+    }
+
+    /**
+     * Check if the object exists, either loose or in a pack.
+     * @param id is the object id.
+     * @return boolean.
+     */
+    static boolean exists(String id) {
+        upgrade();
+        return id != null && id.length() > FANOUT
+                && (file(id).isFile() || Pack.lookup(id) != null);
+    }
+
+    /**
+     * Read the object.
+     * @param id is the object id.
+     * @param expectedClass is the class of the object.
+     * @param <T> is the type of the object.
+     * @return T.
+     */
+    static <T extends Serializable> T read(String id,
+                                           Class<T> expectedClass) {
+        Serializable obj = CACHE.get(id);
+        if (obj == null) {
+            obj = Codec.decode(open(id), expectedClass);
+            CACHE.put(id, obj);
+        }
+        if (obj instanceof Commit) {
+            return expectedClass.cast(((Commit) obj).copy());
+        }
+        return expectedClass.cast(obj);
+    }
+
+    /**
+     * Get an estimate of the bytes a decoded object takes in memory.
+     * @param obj is the object.
+     * @return long.
+     */
+    private static long weight(Serializable obj) {
+        if (obj instanceof Commit) {
+            return ((Commit) obj).weight();
+        } else if (obj instanceof Tree) {
+            return ((Tree) obj).weight();
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Open the stored bytes of the object.
+     * @param id is the object id.
+     * @return InputStream.
+     */
+    static InputStream open(String id) {
+        upgrade();
+        File f = file(id);
+        try {
+            if (f.isFile()) {
+                return new BufferedInputStream(new FileInputStream(f));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        ByteBuffer packed = Pack.lookup(id);
+        if (packed == null) {
+            throw new IllegalArgumentException("no such object " + id);
+        }
+        return Pack.stream(packed);
+    }
+
+    /**
+     * Move the file into the store as the object, unless the store
+     * already has it.
+     * @param id is the object id.
+     * @param src is the file holding the stored bytes of the object.
+     */
+    static void store(String id, File src) {
+        if (exists(id)) {
+            src.delete();
+            return;
+        }
+        File f = file(id);
+        f.getParentFile().mkdirs();
+        if (!src.renameTo(f)) {
+            writeContents(f, readContents(src));
+            src.delete();
+        }
+        Transaction.sync(f);
+    }
+
+    /**
+     * Write the object, creating its fan-out directory if needed.
+     * @param id is the object id.
+     * @param obj is the object.
+     */
+    static void write(String id, Serializable obj) {
+        File f = file(id);
+        f.getParentFile().mkdirs();
+        Codec.write(f, obj);
+        Transaction.sync(f);
+    }
+
+    /**
+     * Write the commit and record it in the commit index, the commit-id
+     * index, the message index, the journal and the commit graph. Their
+     * lengths are noted in the transaction first, so that they are cut
+     * back if it does not commit, and they are forced to disk with the
+     * commit if it does. The id covers everything in the commit, so one
+     * that is already stored is the same commit and is not written
+     * again.
+     * @param commit is the commit.
+     */
+    static void writeCommit(Commit commit) {
+        String id = commit.sha1();
+        if (exists(id)) {
+            return;
+        }
+        write(id, commit);
+        List<File> files = MessageIndex.files(commit);
+        for (String index : new String[] {COMMITS, CommitIndex.IDS,
+                CommitJournal.JOURNAL, CommitGraph.GRAPH}) {
+            files.add(join(index));
+        }
+        Transaction.append(files.toArray(new File[0]));
+        try {
+            Files.write(join(COMMITS).toPath(),
+                    (id + "\n").getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        MessageIndex.append(commit);
+        CommitJournal.append(commit);
+        CommitIndex.add(id, CommitGraph.append(commit));
+    }
+
+    /**
+     * Get the ids of all commits, in the order they were made.
+     * @return List.
+     */
+    static List<String> commits() {
+        upgrade();
+        File index = join(COMMITS);
+        List<String> ids = new ArrayList<>();
+        for (String id : readContentsAsString(index).split("\n")) {
+            if (!id.isEmpty()) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    /** Rewrite every commit that was stored with Java serialization in
+     *  the binary format of Codec, as a loose object. */
+    static void migrate() {
+        for (String id : commits()) {
+            byte[] head = new byte[2];
+            try (InputStream in = open(id)) {
+                if (in.readNBytes(head, 0, 2) < 2) {
+                    continue;
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            if (Codec.serialized(head)) {
+                write(id, read(id, Commit.class));
+            }
+        }
+        File remove = join(".gitlet/remove");
+        if (remove.isFile() && Codec.serialized(readContents(remove))) {
+            Transaction.replace(remove,
+                    Codec.encode(Codec.read(remove, Remove.class)));
+        }
+    }
+
+    /** Move objects of a repository made before fan-out into their
+     *  directories and build the commit index from them. Commit ids were
+     *  "c" and a sha1, one character longer than a blob id, which may
+     *  also start with "c". */
+    private static synchronized void upgrade() {
+        if (_upgraded) {
+            return;
+        }
+        _upgraded = true;
+        if (join(COMMITS).exists() || !join(OBJECTS).isDirectory()) {
+            return;
+        }
+        StringBuilder ids = new StringBuilder();
+        for (String name : plainFilenamesIn(OBJECTS)) {
+            File dest = file(name);
+            dest.getParentFile().mkdirs();
+            join(OBJECTS, name).renameTo(dest);
+            if (name.length() == UID_LENGTH + 1 && name.charAt(0) == 'c') {
+                ids.append(name).append("\n");
+            }
+        }
+        writeContents(join(COMMITS), ids.toString());
+    }
+
+    /** True once the repository layout has been checked. */
+    private static boolean _upgraded;
+}
@@ -0,0 +1,367 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import static gitlet.Utils.*;
+
+/**
+ * A class for pack files. A pack holds many objects back to back in a
+ * .pack file of at most MAX_PACK bytes, and its .idx file lists their ids
+ * in sorted order with the offset and length of each one. Both files are
+ * memory-mapped, so finding an object is a binary search over the index.
+ * @author Ting Qi
+ */
+class Pack {
+
+    /** The pack directory. */
+    static final String PACKS = ObjectStore.OBJECTS + "/pack";
+
+    /** Magic number at the start of an index file. */
+    private static final int MAGIC = 0x47504958;
+
+    /** Version of the index format. */
+    private static final int VERSION = 1;
+
+    /** Bytes used for the id of an index entry. */
+    private static final int ID_BYTES = Utils.UID_LENGTH + 1;
+
+    /** Bytes used by an index entry: id, offset and length. */
+    private static final int ENTRY = ID_BYTES + 8 + 4;
+
+    /** Bytes used by the index header: magic, version and count. */
+    private static final int HEADER = 12;
+
+    /** Largest loose object that is packed; bigger ones stay loose. */
+    private static final long MAX_PACKED = 1 << 28;
+
+    /** Most bytes of objects in one pack, so that it fits in one mapped
+     *  buffer and its offsets in an int; a repack of more writes several
+     *  packs. */
+    private static final long MAX_PACK = 1L << 30;
+
+    /**
+     * A pack read from the files PACK and IDX.
+     * @param pack is the pack file.
+     * @param idx is the index file.
+     */
+    private Pack(File pack, File idx) {
+        _data = map(pack);
+        _index = map(idx);
+        if (_index.getInt(0) != MAGIC || _index.getInt(4) != VERSION) {
+            throw error("Bad pack index %s.", idx.getName());
+        }
+        _count = _index.getInt(8);
+    }
+
+    /**
+     * Return the number of objects in this pack.
+     * @return int.
+     */
+    int size() {
+        return _count;
+    }
+
+    /**
+     * Get the contents of the object, or null if it is not in this pack.
+     * @param id is the object id.
+     * @return ByteBuffer.
+     */
+    ByteBuffer find(String id) {
+        byte[] key = key(id);
+        int lo = 0, hi = _count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = compare(mid, key);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                int at = HEADER + mid * ENTRY + ID_BYTES;
+                int offset = (int) _index.getLong(at);
+                int length = _index.getInt(at + 8);
+                ByteBuffer slice = _data.duplicate();
+                slice.position(offset).limit(offset + length);
+                return slice.slice();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the id of the Kth entry.
+     * @param k is the entry number.
+     * @return String.
+     */
+    String id(int k) {
+        int at = HEADER + k * ENTRY;
+        int len = 0;
+        while (len < ID_BYTES && _index.get(at + len) != 0) {
+            len += 1;
+        }
+        byte[] id = new byte[len];
+        _index.get(at, id);
+        return new String(id, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Compare the id of the Kth entry with KEY.
+     * @param k is the entry number.
+     * @param key is the padded id.
+     * @return int.
+     */
+    private int compare(int k, byte[] key) {
+        int at = HEADER + k * ENTRY;
+        for (int i = 0; i < ID_BYTES; i += 1) {
+            int c = Byte.compare(_index.get(at + i), key[i]);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Look up the object in every pack.
+     * @param id is the object id.
+     * @return ByteBuffer, or null if no pack has it.
+     */
+    static ByteBuffer lookup(String id) {
+        for (Pack p : all()) {
+            ByteBuffer b = p.find(id);
+            if (b != null) {
+                return b;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get an input stream reading the buffer.
+     * @param buf is the buffer.
+     * @return InputStream.
+     */
+    static InputStream stream(ByteBuffer buf) {
+        return new InputStream() {
+            @Override
+            public int read() {
+                return buf.hasRemaining() ? buf.get() & 0xff : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (!buf.hasRemaining()) {
+                    return -1;
+                }
+                len = Math.min(len, buf.remaining());
+                buf.get(b, off, len);
+                return len;
+            }
+
+            @Override
+            public int available() {
+                return buf.remaining();
+            }
+        };
+    }
+
+    /**
+     * Get all packs of the repository.
+     * @return List.
+     */
+    static synchronized List<Pack> all() {
+        if (_packs == null) {
+            _packs = new ArrayList<>();
+            List<String> names = plainFilenamesIn(PACKS);
+            _names = names;
+            if (names != null) {
+                for (String name : names) {
+                    if (name.endsWith(".idx")) {
+                        String base = name.substring(0, name.length() - 4);
+                        _packs.add(new Pack(join(PACKS, base + ".pack"),
+                                join(PACKS, name)));
+                    }
+                }
+            }
+        }
+        return _packs;
+    }
+
+    /** Forget the loaded packs if packs have been written or deleted
+     *  since they were loaded, as when another process repacked. */
+    static synchronized void refresh() {
+        if (_packs != null
+                && !Objects.equals(_names, plainFilenamesIn(PACKS))) {
+            _packs = null;
+        }
+    }
+
+    /** Put every loose object and every existing pack into new packs of
+     *  at most MAX_PACK bytes each, then delete the loose objects and the
+     *  old packs once the new packs are on disk. */
+    static void repack() {
+        TreeMap<String, Object> objects = new TreeMap<>();
+        for (Pack p : all()) {
+            for (int k = 0; k < p.size(); k += 1) {
+                String id = p.id(k);
+                objects.put(id, p.find(id));
+            }
+        }
+        List<File> loose = new ArrayList<>();
+        for (File dir : join(ObjectStore.OBJECTS).listFiles()) {
+            if (!dir.isDirectory() || dir.getName().equals("pack")) {
+                continue;
+            }
+            for (String name : plainFilenamesIn(dir)) {
+                if (join(dir, name).length() > MAX_PACKED) {
+                    continue;
+                }
+                objects.put(dir.getName() + name, join(dir, name));
+                loose.add(join(dir, name));
+            }
+        }
+        if (loose.isEmpty() && all().size() <= 1) {
+            return;
+        }
+        join(PACKS).mkdirs();
+        List<String> old = plainFilenamesIn(PACKS);
+        List<String> written = new ArrayList<>();
+        TreeMap<String, Object> part = new TreeMap<>();
+        long size = 0;
+        for (String id : objects.keySet()) {
+            Object src = objects.get(id);
+            long n = src instanceof File ? ((File) src).length()
+                : ((ByteBuffer) src).remaining();
+            if (!part.isEmpty() && size + n > MAX_PACK) {
+                written.add(write(part));
+                part = new TreeMap<>();
+                size = 0;
+            }
+            part.put(id, src);
+            size += n;
+        }
+        if (!part.isEmpty()) {
+            written.add(write(part));
+        }
+        for (String f : old) {
+            if (!written.contains(f.substring(0, f.lastIndexOf('.')))) {
+                Transaction.delete(join(PACKS, f));
+            }
+        }
+        for (File f : loose) {
+            Transaction.delete(f);
+        }
+        for (File f : loose) {
+            Transaction.delete(f.getParentFile());
+        }
+        _packs = null;
+    }
+
+    /**
+     * Write the objects into a new pack, each taken from a loose file or
+     * the buffer of an old pack, unless a pack of the same objects is
+     * already there.
+     * @param objects is the map from id to File or ByteBuffer, with at
+     *                most MAX_PACK bytes in all.
+     * @return the name of the pack, without its extension.
+     */
+    private static String write(TreeMap<String, Object> objects) {
+        String name = "pack-" + sha1(new ArrayList<Object>(objects.keySet()));
+        if (join(PACKS, name + ".idx").isFile()) {
+            return name;
+        }
+        ByteArrayOutputStream idx = new ByteArrayOutputStream();
+        try (FileChannel data = FileChannel.open(
+                 join(PACKS, name + ".pack").toPath(),
+                 StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(idx);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(objects.size());
+            for (String id : objects.keySet()) {
+                Object src = objects.get(id);
+                long offset = data.position();
+                if (src instanceof File) {
+                    try (FileChannel in = FileChannel.open(
+                             ((File) src).toPath())) {
+                        long n = in.size();
+                        for (long done = 0; done < n;) {
+                            done += in.transferTo(done, n - done, data);
+                        }
+                    }
+                } else {
+                    data.write(((ByteBuffer) src).duplicate());
+                }
+                out.write(key(id));
+                out.writeLong(offset);
+                out.writeInt((int) (data.position() - offset));
+            }
+            out.close();
+            if (data.position() > Integer.MAX_VALUE) {
+                throw error("Internal error writing pack.");
+            }
+        } catch (IOException excp) {
+            throw error("Internal error writing pack.");
+        }
+        writeContents(join(PACKS, name + ".idx"), idx.toByteArray());
+        Transaction.sync(join(PACKS, name + ".pack"));
+        Transaction.sync(join(PACKS, name + ".idx"));
+        return name;
+    }
+
+    /**
+     * Get the id padded with zeros to the width of an index entry.
+     * @param id is the object id.
+     * @return byte[].
+     */
+    private static byte[] key(String id) {
+        byte[] key = new byte[ID_BYTES];
+        byte[] b = id.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(b, 0, key, 0, Math.min(b.length, ID_BYTES));
+        return key;
+    }
+
+    /**
+     * Map the whole file read-only.
+     * @param file is the file.
+     * @return MappedByteBuffer.
+     */
+    private static MappedByteBuffer map(File file) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel ch = raf.getChannel();
+            return ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** The packs of the repository, loaded on first use. */
+    private static List<Pack> _packs;
+
+    /** The files in the pack directory when the packs were loaded. */
+    private static List<String> _names;
+
+    /** The mapped pack file. */
+    private final MappedByteBuffer _data;
+
+    /** The mapped index file. */
+    private final MappedByteBuffer _index;
+
+    /** The number of objects in the pack. */
+    private final int _count;
+}
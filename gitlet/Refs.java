@@ -0,0 +1,161 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static gitlet.Utils.*;
+
+/**
+ * A class for branch refs. A loose ref is a file under refs/heads
+ * holding the id of the head commit of its branch. The packed-refs file
+ * holds one "id branch" line per branch, sorted by name, and is read in
+ * one go; a loose ref overrides the packed one of the same branch.
+ * @author Ting Qi
+ */
+class Refs {
+
+    /** The directory of loose refs. */
+    static final String HEADS = ".gitlet/refs/heads";
+
+    /** The packed-refs file. */
+    static final String PACKED = ".gitlet/packed-refs";
+
+    /**
+     * Get the id of the head commit of the branch.
+     * @param branch is the branch.
+     * @return String, or null if there is no such branch.
+     */
+    static String read(String branch) {
+        File loose = join(HEADS, branch);
+        if (loose.isFile()) {
+            byte[] ref = readContents(loose);
+            if (ref.length > 1 && ref[0] == (byte) 0xac
+                    && ref[1] == (byte) 0xed) {
+                return Codec.read(loose, Commit.class).getSha1();
+            }
+            return new String(ref).trim();
+        }
+        return packed().get(branch);
+    }
+
+    /**
+     * Check if the branch exists.
+     * @param branch is the branch.
+     * @return boolean.
+     */
+    static boolean exists(String branch) {
+        return read(branch) != null;
+    }
+
+    /**
+     * Point the branch at the commit.
+     * @param branch is the branch.
+     * @param id is the commit id.
+     */
+    static void write(String branch, String id) {
+        Transaction.replace(join(HEADS, branch),
+                (id + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Delete the branch.
+     * @param branch is the branch.
+     */
+    static void delete(String branch) {
+        Transaction.delete(join(HEADS, branch));
+        TreeMap<String, String> packed = packed();
+        if (packed.remove(branch) != null) {
+            writePacked(packed);
+        }
+    }
+
+    /**
+     * Get every branch, sorted.
+     * @return List.
+     */
+    static List<String> branches() {
+        TreeSet<String> names = new TreeSet<>(packed().keySet());
+        loose(join(HEADS), "", names);
+        return new ArrayList<>(names);
+    }
+
+    /** Move every loose ref into the packed-refs file. */
+    static void pack() {
+        TreeSet<String> names = new TreeSet<>();
+        loose(join(HEADS), "", names);
+        if (names.isEmpty()) {
+            return;
+        }
+        TreeMap<String, String> packed = packed();
+        for (String name : names) {
+            packed.put(name, read(name));
+        }
+        writePacked(packed);
+        for (String name : names) {
+            File f = join(HEADS, name);
+            Transaction.delete(f);
+            for (File dir = f.getParentFile(); !dir.equals(join(HEADS));
+                 dir = dir.getParentFile()) {
+                Transaction.delete(dir);
+            }
+        }
+    }
+
+    /**
+     * Add the names of the loose refs under DIR to NAMES.
+     * @param dir is the directory.
+     * @param prefix is the branch name prefix of the directory.
+     * @param names is the branch names.
+     */
+    private static void loose(File dir, String prefix, TreeSet<String> names) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File f : files) {
+            if (f.isDirectory()) {
+                loose(f, prefix + f.getName() + "/", names);
+            } else {
+                names.add(prefix + f.getName());
+            }
+        }
+    }
+
+    /**
+     * Read the packed-refs file.
+     * @return TreeMap from branch to commit id.
+     */
+    private static TreeMap<String, String> packed() {
+        TreeMap<String, String> result = new TreeMap<>();
+        File file = join(PACKED);
+        if (!file.isFile()) {
+            return result;
+        }
+        for (String line : readContentsAsString(file).split("\n")) {
+            int sp = line.indexOf(' ');
+            if (sp > 0) {
+                result.put(line.substring(sp + 1), line.substring(0, sp));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Replace the packed-refs file.
+     * @param packed is the map from branch to commit id.
+     */
+    private static void writePacked(TreeMap<String, String> packed) {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, String> e : packed.entrySet()) {
+            out.append(e.getValue()).append(' ').append(e.getKey())
+                .append('\n');
+        }
+        Transaction.replace(join(PACKED),
+                out.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
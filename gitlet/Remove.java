@@ -1,5 +1,8 @@
 package gitlet;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 
@@ -9,11 +12,41 @@ import java.util.ArrayList;
  */
 public class Remove implements Serializable {
 
+    /** Serialization version of the first release, so objects it wrote
+     *  can still be decoded. */
+    private static final long serialVersionUID = 2174491507264210011L;
+
     /** A new Remove, using Current Blobs.*/
     Remove() {
         _current = new ArrayList<String>();
     }
 
+    /**
+     * Write the names in the format of Codec.
+     * @param out is the output.
+     * @throws IOException if it cannot be written.
+     */
+    void encode(DataOutputStream out) throws IOException {
+        Codec.writeVarint(out, _current.size());
+        for (String name : _current) {
+            Codec.writeString(out, name);
+        }
+    }
+
+    /**
+     * Read a Remove written by encode.
+     * @param in is the input.
+     * @return Remove.
+     * @throws IOException if it cannot be read.
+     */
+    static Remove decode(DataInputStream in) throws IOException {
+        Remove r = new Remove();
+        for (long n = Codec.readVarint(in); n > 0; n -= 1) {
+            r.add(Codec.readString(in));
+        }
+        return r;
+    }
+
     /**
      * Add the file.
      * @param name is the name.
@@ -0,0 +1,163 @@
+package gitlet;
+
+import static gitlet.Utils.*;
+
+/**
+ * A class for the state of the repository during one command. The
+ * current branch, its head commit, the stage and the removal list are
+ * read once when the command starts, and every question about the
+ * status of a file is answered from them.
+ * @author Ting Qi
+ */
+class Repo {
+
+    /** Read the state of the repository in the current directory. */
+    Repo() {
+        _branch = readContentsAsString(join(".gitlet/HEAD"));
+        _head = ObjectStore.read(Refs.read(_branch), Commit.class);
+        _stage = Stage.read();
+        _remove = Codec.read(join(".gitlet/remove"), Remove.class);
+    }
+
+    /**
+     * Get the current branch.
+     * @return String.
+     */
+    String branch() {
+        return _branch;
+    }
+
+    /**
+     * Get the head commit of the current branch.
+     * @return Commit.
+     */
+    Commit head() {
+        return _head;
+    }
+
+    /**
+     * Get the stage.
+     * @return Stage.
+     */
+    Stage stage() {
+        return _stage;
+    }
+
+    /**
+     * Get the removal list.
+     * @return Remove.
+     */
+    Remove removed() {
+        return _remove;
+    }
+
+    /**
+     * Get the commit graph, reading it on first use.
+     * @return CommitGraph.
+     */
+    CommitGraph graph() {
+        if (_graph == null) {
+            _graph = CommitGraph.read();
+        }
+        return _graph;
+    }
+
+    /**
+     * Make the branch current, with the commit as its head.
+     * @param branch is the branch.
+     * @param head is the head commit.
+     */
+    void setHead(String branch, Commit head) {
+        _branch = branch;
+        _head = head;
+        _graph = null;
+    }
+
+    /**
+     * Replace the removal list.
+     * @param remove is the removal list.
+     */
+    void setRemoved(Remove remove) {
+        _remove = remove;
+    }
+
+    /** Write what was learned about working files during the command
+     *  back to the index. */
+    void flush() {
+        _stage.flush();
+    }
+
+    /**
+     * Check if it is tracked.
+     * @param name is the name.
+     * @return boolean.
+     */
+    boolean tracked(String name) {
+        return _head.getFile().get(name) != null;
+    }
+
+    /**
+     * Check if it is staged.
+     * @param name is the name.
+     * @return boolean.
+     */
+    boolean staged(String name) {
+        return _stage.getFile().get(name) != null;
+    }
+
+    /**
+     * Check if any changes are not staged.
+     * @param name is the name.
+     * @return boolean.
+     */
+    boolean changeNotStaged(String name) {
+        Object staged = _stage.getFile().get(name);
+        return staged != null && !staged.equals(_stage.hash(name));
+    }
+
+    /**
+     * Check if it is tracked but changed.
+     * @param name is the name.
+     * @return boolean.
+     */
+    boolean trackedChanged(String name) {
+        Object tracked = _head.getFile().get(name);
+        return tracked != null && !tracked.equals(_stage.hash(name));
+    }
+
+    /**
+     * Check if it is tracked but removed.
+     * @param name is the name.
+     * @return boolean.
+     */
+    boolean trackedDeleted(String name) {
+        return tracked(name) && !join(name).isFile();
+    }
+
+    /**
+     * Check if the working file would be lost by replacing or deleting
+     * it: it exists and is untracked or has changes.
+     * @param name is the name.
+     * @return boolean.
+     */
+    boolean inTheWay(String name) {
+        return join(name).isFile()
+            && (changeNotStaged(name) || trackedChanged(name)
+                || !tracked(name));
+    }
+
+    /** The current branch. */
+    private String _branch;
+
+    /** The head commit of the current branch. */
+    private Commit _head;
+
+    /** The stage. */
+    private Stage _stage;
+
+    /** The removal list. */
+    private Remove _remove;
+
+    /** The commit graph, or null if it has not been read. */
+    private CommitGraph _graph;
+}
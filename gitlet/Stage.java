@@ -1,19 +1,47 @@
 package gitlet;
 
-import java.io.Serializable;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import static gitlet.Utils.*;
 
 /**
- * A class for staging and checking the staging status.
+ * A class for staging and checking the staging status. The index file
+ * is binary: the staged files with their blob ids, then the size,
+ * modification time, file key and sha1 last seen for each working file,
+ * so files whose metadata has not changed are not hashed again.
  * @author Ting Qi
  */
-public class Stage implements Serializable {
+public class Stage {
+
+    /** The index file. */
+    static final String INDEX = ".gitlet/stage/index";
+
+    /** Magic number at the start of the index file. */
+    private static final int MAGIC = 0x47494458;
+
+    /** Version of the index format. */
+    private static final int VERSION = 1;
+
+    /** Files modified this recently (in nanoseconds) before the index is
+     *  written are not cached, since a later change within the timestamp
+     *  granularity would go unseen. */
+    private static final long RACY = TimeUnit.SECONDS.toNanos(2);
 
     /** constructor.*/
     Stage() {
         _current = new HashMap<>();
+        _stats = new ConcurrentHashMap<>();
     }
 
     /**
@@ -41,68 +69,155 @@ public class Stage implements Serializable {
         return _current;
     }
 
-    /**
-     * Check if it is tracked.
-     * @param name is the name.
-     * @return boolean.
-     */
-    public static boolean tracked(String name) {
-        String head = readContentsAsString(join(".gitlet/HEAD"));
-        Commit current = readObject(join(".gitlet/refs/heads", head),
-                Commit.class);
-        return current.getFile().get(name) != null;
+    /** Unstage every file, keeping what is known about working files. */
+    void clear() {
+        _current.clear();
     }
 
     /**
-     * Check if it is staged.
-     * @param name is the name.
-     * @return boolean.
+     * Read the index file.
+     * @return Stage.
      */
-    public static boolean staged(String name) {
-        Stage s = readObject(join(".gitlet/stage/index"), Stage.class);
-        return s.getFile().get(name) != null;
+    static Stage read() {
+        long start = Trace.start();
+        Stage s = new Stage();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(
+                        Files.newInputStream(join(INDEX).toPath())))) {
+            in.mark(4);
+            int magic = in.readInt();
+            if (magic >>> 16 == 0xaced) {
+                in.reset();
+                s._current.putAll(Codec.legacyStage(in));
+                return s;
+            }
+            if (magic != MAGIC || in.readInt() != VERSION) {
+                throw error("Unknown index format.");
+            }
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                s.put(in.readUTF(), in.readUTF());
+            }
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                String name = in.readUTF();
+                s._stats.put(name, new Stat(in.readLong(), in.readLong(),
+                        in.readLong(), in.readUTF()));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Trace.end(Trace.INDEX_READ, start,
+                Trace.on() ? join(INDEX).length() : 0);
+        return s;
     }
 
-    /**
-     * Check if any changes are not staged.
-     * @param name is the name.
-     * @return boolean.
-     */
-    public static boolean changeNotStaged(String name) {
-        Stage s = readObject(join(".gitlet/stage/index"), Stage.class);
-        String newsha1 = sha1(readContentsAsString(join(name)));
-        return s.getFile().get(name) != null
-                && !s.getFile().get(name).equals(newsha1);
+    /** Write the index file, with the metadata of every file hashed so
+     *  far, replacing it when the transaction commits. */
+    void write() {
+        long start = Trace.start();
+        long now = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(_current.size());
+            for (Map.Entry<String, String> e : _current.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeUTF(e.getValue());
+            }
+            _stats.values().removeIf(st -> st._mtime > now - RACY);
+            out.writeInt(_stats.size());
+            for (Map.Entry<String, Stat> e : _stats.entrySet()) {
+                Stat st = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeLong(st._size);
+                out.writeLong(st._mtime);
+                out.writeLong(st._key);
+                out.writeUTF(st._sha1);
+            }
+        } catch (IOException excp) {
+            throw error("Internal error writing index.");
+        }
+        Transaction.replace(join(INDEX), bytes.toByteArray());
+        _dirty = false;
+        Trace.end(Trace.INDEX_WRITE, start, bytes.size());
     }
 
-    /**
-     * Check if it is tracked but changed.
-     * @param name is the name.
-     * @return boolean.
-     */
-    public static boolean trackedChanged(String name) {
-        String head = readContentsAsString(join(".gitlet/HEAD"));
-        Commit current = readObject(join(".gitlet/refs/heads", head),
-                Commit.class);
-        String newSha1 = sha1(readContentsAsString(join(name)));
-        return current.getFile().get(name) != null
-                && !current.getFile().get(name).equals(newSha1);
+    /** Write the index file again if files were hashed since it was last
+     *  written. */
+    void flush() {
+        if (_dirty) {
+            write();
+        }
     }
 
     /**
-     * Check if it is tracked but removed.
+     * Get the sha1 of the working file, from the index if its size,
+     * modification time and file key are unchanged.
      * @param name is the name.
-     * @return boolean.
+     * @return String.
      */
-    public static boolean trackedDeleted(String name) {
-        String head = readContentsAsString(join(".gitlet/HEAD"));
-        Commit current = readObject(join(".gitlet/refs/heads", head),
-                Commit.class);
-        return current.getFile().get(name) != null
-                && !plainFilenamesIn(System.getProperty("user.dir"))
-                .contains(name);
+    String hash(String name) {
+        File file = join(name);
+        BasicFileAttributes attrs;
+        long start = Trace.start();
+        try {
+            attrs = Files.readAttributes(file.toPath(),
+                    BasicFileAttributes.class);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Trace.end(Trace.STAT, start, 0);
+        long size = attrs.size();
+        long mtime = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        long key = attrs.fileKey() == null ? 0 : attrs.fileKey().hashCode();
+        Stat st = _stats.get(name);
+        if (st != null && st._size == size && st._mtime == mtime
+                && st._key == key) {
+            return st._sha1;
+        }
+        String sha1 = sha1(file);
+        _stats.put(name, new Stat(size, mtime, key, sha1));
+        _dirty = true;
+        return sha1;
     }
 
+    /** The metadata and sha1 of a working file when it was last hashed. */
+    private static class Stat {
+
+        /**
+         * A Stat.
+         * @param size is the size.
+         * @param mtime is the modification time in nanoseconds.
+         * @param key is the hash of the file key (device and inode).
+         * @param sha1 is the sha1 of the contents.
+         */
+        Stat(long size, long mtime, long key, String sha1) {
+            _size = size;
+            _mtime = mtime;
+            _key = key;
+            _sha1 = sha1;
+        }
+
+        /** The size. */
+        private final long _size;
+
+        /** The modification time. */
+        private final long _mtime;
+
+        /** The hash of the file key. */
+        private final long _key;
+
+        /** The sha1 of the contents. */
+        private final String _sha1;
+    }
+
+    /** Metadata of hashed working files. Files may be hashed by several
+     *  threads at once. */
+    private ConcurrentHashMap<String, Stat> _stats;
+
+    /** True if files were hashed since the index was last written. */
+    private volatile boolean _dirty;
+
     /** Stores a list of blobs.*/
     private HashMap<String, String> _current;
 }
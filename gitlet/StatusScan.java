@@ -0,0 +1,160 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A class for scanning the working directory for status. Each directory
+ * is a task on a fork-join pool of a bounded number of threads, so the
+ * walk and the hashing of files below it are shared out by work
+ * stealing. The results are kept in sorted sets, in the order status
+ * prints them.
+ * @author Ting Qi
+ */
+class StatusScan {
+
+    /** Most files of one directory handled by a single task. */
+    private static final int BATCH = 64;
+
+    /**
+     * Scan the working directory of the repository with one thread per
+     * processor.
+     * @param repo is the repository.
+     */
+    StatusScan(Repo repo) {
+        this(repo, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Scan the working directory of the repository.
+     * @param repo is the repository.
+     * @param threads is the most threads to use.
+     */
+    @SuppressWarnings("unchecked")
+    StatusScan(Repo repo, int threads) {
+        _repo = repo;
+        _modified = new ConcurrentSkipListSet<>();
+        _untracked = new ConcurrentSkipListSet<>();
+        _seen = ConcurrentHashMap.newKeySet();
+        Set<String> tracked = repo.head().getFile().keySet();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new Walk(new File("."), ""));
+        } finally {
+            pool.shutdown();
+        }
+        Set<String> staged = repo.stage().getFile().keySet();
+        List<String> removed = repo.removed().getfile();
+        for (String f : tracked) {
+            if (!_seen.contains(f)
+                    && (staged.contains(f) || !removed.contains(f))) {
+                _modified.add(f + " (deleted)");
+            }
+        }
+    }
+
+    /**
+     * Get the files with changes not staged for commit, each followed by
+     * " (modified)" or " (deleted)", sorted.
+     * @return List.
+     */
+    List<String> modified() {
+        return new ArrayList<>(_modified);
+    }
+
+    /**
+     * Get the files that are neither tracked nor staged, sorted.
+     * @return List.
+     */
+    List<String> untracked() {
+        return new ArrayList<>(_untracked);
+    }
+
+    /**
+     * Record the status of the working file.
+     * @param name is its path from the working directory.
+     */
+    private void file(String name) {
+        _seen.add(name);
+        if (!_repo.tracked(name) && !_repo.staged(name)) {
+            _untracked.add(name);
+        } else if ((_repo.trackedChanged(name) && !_repo.staged(name))
+                || _repo.changeNotStaged(name)) {
+            _modified.add(name + " (modified)");
+        }
+    }
+
+    /** The task of scanning one directory. */
+    private class Walk extends RecursiveAction {
+
+        /**
+         * A task scanning the directory.
+         * @param dir is the directory.
+         * @param prefix is its path from the working directory, ending
+         *               in "/", or empty for the working directory.
+         */
+        Walk(File dir, String prefix) {
+            _dir = dir;
+            _prefix = prefix;
+        }
+
+        @Override
+        protected void compute() {
+            long start = Trace.start();
+            File[] files = _dir.listFiles();
+            if (files == null) {
+                return;
+            }
+            Trace.end(Trace.LIST_FILES, start, 0);
+            List<RecursiveAction> tasks = new ArrayList<>();
+            List<String> names = new ArrayList<>();
+            for (File f : files) {
+                String name = _prefix + f.getName();
+                if (f.isDirectory()) {
+                    if (!name.equals(".gitlet")) {
+                        tasks.add(new Walk(f, name + "/"));
+                    }
+                } else if (f.isFile()) {
+                    names.add(name);
+                }
+            }
+            for (int i = 0; i < names.size(); i += BATCH) {
+                List<String> batch =
+                    names.subList(i, Math.min(names.size(), i + BATCH));
+                tasks.add(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        for (String name : batch) {
+                            file(name);
+                        }
+                    }
+                });
+            }
+            invokeAll(tasks);
+        }
+
+        /** The directory. */
+        private final File _dir;
+
+        /** Its path from the working directory. */
+        private final String _prefix;
+    }
+
+    /** The repository. */
+    private final Repo _repo;
+
+    /** The lines of the modifications section. */
+    private final ConcurrentSkipListSet<String> _modified;
+
+    /** The untracked files. */
+    private final ConcurrentSkipListSet<String> _untracked;
+
+    /** Every working file found. */
+    private final Set<String> _seen;
+}
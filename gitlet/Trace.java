@@ -0,0 +1,321 @@
+package gitlet;
+
+import java.io.File;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static gitlet.Utils.*;
+
+/**
+ * A class for tracing where a command spends its time. While tracing is
+ * on, the I/O and hashing primitives of Utils, the encoding of objects,
+ * the working-tree updates and merge-base walks, each method of Commands
+ * (including those a merge runs) and each command as a whole count their
+ * calls, the bytes they handle and the nanoseconds they take, and a
+ * summary is written when the command ends:
+ * to standard error, or as JSON to a file. Tracing is turned on by
+ * "--trace" or "--trace=FILE" before the command, or by the environment
+ * variable GITLET_TRACE set to 1 or to a file name. The summary ends
+ * with the statistics of the object caches, which count from the start
+ * of the process. While it is off, a traced call costs one test of a
+ * static field.
+ * @author Ting Qi
+ */
+class Trace {
+
+    /** Every counter, by name, made before the counters below. */
+    private static final Map<String, Counter> COUNTERS =
+        new ConcurrentSkipListMap<>();
+
+    /** Name of the environment variable turning tracing on. */
+    static final String ENV = "GITLET_TRACE";
+
+    /** Hashing of bytes in memory. */
+    static final Counter SHA1 = counter("sha1");
+
+    /** Hashing of files. */
+    static final Counter SHA1_FILE = counter("sha1File");
+
+    /** Reading whole files. */
+    static final Counter READ = counter("readContents");
+
+    /** Writing whole files. */
+    static final Counter WRITE = counter("writeContents");
+
+    /** Listing directories. */
+    static final Counter LIST = counter("plainFilenamesIn");
+
+    /** Java deserialization. */
+    static final Counter READ_OBJECT = counter("readObject");
+
+    /** Java serialization. */
+    static final Counter SERIALIZE = counter("serialize");
+
+    /** Encoding objects. */
+    static final Counter ENCODE = counter("Codec.encode");
+
+    /** Decoding objects. */
+    static final Counter DECODE = counter("Codec.decode");
+
+    /** Reading the index. */
+    static final Counter INDEX_READ = counter("Stage.read");
+
+    /** Writing the index. */
+    static final Counter INDEX_WRITE = counter("Stage.write");
+
+    /** Reading the metadata of working files. */
+    static final Counter STAT = counter("stat");
+
+    /** Listing working directories. */
+    static final Counter LIST_FILES = counter("listFiles");
+
+    /** Hashing and storing working files as blobs. */
+    static final Counter BLOB_STORE = counter("Blobs.store");
+
+    /** Writing blobs out to working files. */
+    static final Counter BLOB_WRITE = counter("Blobs.write");
+
+    /** Forcing files to disk when a transaction commits. */
+    static final Counter FSYNC = counter("fsync");
+
+    /** Diffing the trees of a checkout, reset or merge. */
+    static final Counter WORKTREE_PLAN = counter("WorkTree.plan");
+
+    /** Checking for working files a checkout would lose. */
+    static final Counter WORKTREE_CHECK = counter("WorkTree.inTheWay");
+
+    /** Writing and deleting the working files of a checkout. */
+    static final Counter WORKTREE_UPDATE = counter("WorkTree.update");
+
+    /** Finding merge bases. */
+    static final Counter MERGE_BASES = counter("MergeBase.bases");
+
+    /** Walking the commit graph for an ancestor. */
+    static final Counter IS_ANCESTOR = counter("MergeBase.isAncestor");
+
+    /**
+     * Turn tracing on for one command if the environment asks for it or
+     * the first argument is a trace option, which is then dropped.
+     * @param args is the arguments of Main.
+     * @return the arguments without the trace option.
+     */
+    static String[] begin(String... args) {
+        String dest = System.getenv(ENV);
+        if (args.length > 0 && args[0].startsWith("--trace")) {
+            dest = args[0].startsWith("--trace=")
+                ? args[0].substring("--trace=".length()) : "1";
+            String[] rest = new String[args.length - 1];
+            System.arraycopy(args, 1, rest, 0, rest.length);
+            args = rest;
+        }
+        if (dest == null || dest.isEmpty() || dest.equals("0")) {
+            _on = false;
+            return args;
+        }
+        for (Counter c : COUNTERS.values()) {
+            c.reset();
+        }
+        _dest = dest;
+        _command = String.join(" ", args);
+        _start = System.nanoTime();
+        _on = true;
+        return args;
+    }
+
+    /** Turn tracing off, writing the summary if it was on. */
+    static void end() {
+        if (!_on) {
+            return;
+        }
+        _on = false;
+        long wall = System.nanoTime() - _start;
+        if (_dest.equals("1") || _dest.equals("stderr")) {
+            System.out.flush();
+            System.err.print(table(wall));
+            System.err.flush();
+        } else {
+            writeContents(new File(_dest), json(wall));
+        }
+    }
+
+    /**
+     * Get the counter of the name, making it if it is new.
+     * @param name is the name.
+     * @return Counter.
+     */
+    static Counter counter(String name) {
+        return COUNTERS.computeIfAbsent(name, Counter::new);
+    }
+
+    /**
+     * Check if tracing is on, for counts that cost something to get.
+     * @return boolean.
+     */
+    static boolean on() {
+        return _on;
+    }
+
+    /**
+     * Get the start time of a traced call.
+     * @return the time in nanoseconds, or 0 if tracing is off.
+     */
+    static long start() {
+        return _on ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Count a traced call.
+     * @param c is its counter.
+     * @param start is what start returned when it began.
+     * @param bytes is the bytes it handled.
+     */
+    static void end(Counter c, long start, long bytes) {
+        if (_on) {
+            c.add(System.nanoTime() - start, bytes);
+        }
+    }
+
+    /**
+     * Count a traced call under a name.
+     * @param name is the name of its counter.
+     * @param start is what start returned when it began.
+     */
+    static void end(String name, long start) {
+        if (_on) {
+            counter(name).add(System.nanoTime() - start, 0);
+        }
+    }
+
+    /**
+     * Get the summary as a table.
+     * @param wall is the time since tracing began.
+     * @return String.
+     */
+    private static String table(long wall) {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.ROOT, "trace: %s: %.3f ms%n",
+                _command, wall / 1e6));
+        out.append(String.format("%-24s %10s %14s %12s%n", "counter",
+                "calls", "bytes", "ms"));
+        for (Counter c : COUNTERS.values()) {
+            long calls = c._calls.sum();
+            if (calls > 0) {
+                out.append(String.format(Locale.ROOT,
+                        "%-24s %10d %14d %12.3f%n", c._name, calls,
+                        c._bytes.sum(), c._nanos.sum() / 1e6));
+            }
+        }
+        for (ObjectCache<?> cache : ObjectCache.all()) {
+            out.append(String.format("cache %s%n", cache.stats()));
+        }
+        return out.toString();
+    }
+
+    /**
+     * Get the summary as JSON.
+     * @param wall is the time since tracing began.
+     * @return String.
+     */
+    private static String json(long wall) {
+        StringBuilder out = new StringBuilder();
+        out.append("{\"command\": ").append(quote(_command))
+            .append(", \"nanos\": ").append(wall)
+            .append(", \"counters\": {");
+        String sep = "";
+        for (Counter c : COUNTERS.values()) {
+            long calls = c._calls.sum();
+            if (calls > 0) {
+                out.append(sep).append("\n  ").append(quote(c._name))
+                    .append(": {\"calls\": ").append(calls)
+                    .append(", \"bytes\": ").append(c._bytes.sum())
+                    .append(", \"nanos\": ").append(c._nanos.sum())
+                    .append('}');
+                sep = ",";
+            }
+        }
+        out.append("\n}, \"caches\": {");
+        sep = "";
+        for (ObjectCache<?> cache : ObjectCache.all()) {
+            out.append(sep).append("\n  ").append(quote(cache.name()))
+                .append(": ").append(cache.json());
+            sep = ",";
+        }
+        return out.append("\n}}\n").toString();
+    }
+
+    /**
+     * Get the string as a JSON string.
+     * @param s is the string.
+     * @return String.
+     */
+    private static String quote(String s) {
+        StringBuilder out = new StringBuilder("\"");
+        for (char ch : s.toCharArray()) {
+            if (ch == '"' || ch == '\\') {
+                out.append('\\').append(ch);
+            } else if (ch < ' ') {
+                out.append(String.format("\\u%04x", (int) ch));
+            } else {
+                out.append(ch);
+            }
+        }
+        return out.append('"').toString();
+    }
+
+    /** The calls, bytes and nanoseconds counted for one name. Calls may
+     *  be counted from many threads at once. */
+    static class Counter {
+
+        /**
+         * A counter.
+         * @param name is its name.
+         */
+        Counter(String name) {
+            _name = name;
+        }
+
+        /**
+         * Count a call.
+         * @param nanos is the time it took.
+         * @param bytes is the bytes it handled.
+         */
+        void add(long nanos, long bytes) {
+            _calls.increment();
+            _nanos.add(nanos);
+            _bytes.add(bytes);
+        }
+
+        /** Set every count back to zero. */
+        void reset() {
+            _calls.reset();
+            _nanos.reset();
+            _bytes.reset();
+        }
+
+        /** The name. */
+        private final String _name;
+
+        /** The calls counted. */
+        private final LongAdder _calls = new LongAdder();
+
+        /** The nanoseconds counted. */
+        private final LongAdder _nanos = new LongAdder();
+
+        /** The bytes counted. */
+        private final LongAdder _bytes = new LongAdder();
+    }
+
+    /** True while tracing. */
+    private static volatile boolean _on;
+
+    /** Where the summary goes: "1" or "stderr", or a file name. */
+    private static String _dest;
+
+    /** The command traced. */
+    private static String _command;
+
+    /** When tracing began. */
+    private static long _start;
+}
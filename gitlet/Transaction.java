@@ -0,0 +1,455 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import static gitlet.Utils.*;
+
+/**
+ * A class for the write transaction of one command. While a transaction
+ * is open, new files that must outlive a crash, such as objects, staged
+ * blobs and the indexes appended to, are only noted, files that replace
+ * others, such as HEAD, the refs, the index and the removal list, are
+ * written to temporary files under .gitlet/tmp, and deletions are put
+ * off. Committing forces all the noted and temporary files to disk in
+ * one batch, then writes a journal of the renames and deletions, forces
+ * it, and carries them out. A journal left by a crash is carried out by
+ * the next command, so the refs, index and removal list change together
+ * or not at all, and a command pays for one round of forcing however
+ * many objects it writes. Forcing is turned off by the environment
+ * variable GITLET_FSYNC set to 0, which leaves the renames atomic but
+ * not durable. Files appended to in place, such as the commit indexes,
+ * have their lengths written to a second journal before the first
+ * append; if the transaction does not commit, or a crash leaves no
+ * journal of renames, they are cut back to those lengths, so no torn
+ * record is ever left at their end. Outside a transaction files are
+ * replaced and deleted at once and not forced, and appends are not
+ * undone.
+ * @author Ting Qi
+ */
+class Transaction {
+
+    /** Name of the environment variable turning forcing off. */
+    static final String ENV = "GITLET_FSYNC";
+
+    /** The directory of temporary files. */
+    static final String TMP = ".gitlet/tmp";
+
+    /** The journal of a committing transaction. */
+    static final String JOURNAL = ".gitlet/transaction";
+
+    /** The journal of the lengths of files appended to. */
+    static final String APPENDS = ".gitlet/appending";
+
+    /**
+     * A transaction inside OUTER.
+     * @param outer is the transaction it suspends, or null.
+     */
+    private Transaction(Transaction outer) {
+        _outer = outer;
+    }
+
+    /**
+     * Open a transaction, first finishing one that a crash interrupted.
+     * A transaction opened inside another, as by each line of a batch,
+     * commits on its own.
+     * @return Transaction.
+     */
+    static synchronized Transaction begin() {
+        recover(_current == null);
+        _current = new Transaction(_current);
+        return _current;
+    }
+
+    /**
+     * Note the new file, to be forced to disk on commit.
+     * @param file is the file.
+     */
+    static synchronized void sync(File file) {
+        if (_current != null) {
+            _current._synced.add(file.toPath());
+        }
+    }
+
+    /**
+     * Note that the files are about to be appended to: record the length
+     * of each that this transaction has not appended to yet, or -1 if
+     * it does not exist, in the journal of appends, and force it to disk
+     * before returning. The files are forced on commit, as with sync.
+     * @param files is the files.
+     */
+    static void append(File... files) {
+        StringBuilder lines = new StringBuilder();
+        synchronized (Transaction.class) {
+            if (_current == null) {
+                return;
+            }
+            for (File file : files) {
+                Path key = file.toPath().normalize();
+                _current._synced.add(key);
+                if (!_current._appended.containsKey(key)) {
+                    long length = file.isFile() ? file.length() : -1;
+                    _current._appended.put(key, length);
+                    lines.append("A\t").append(length).append('\t')
+                        .append(key).append('\n');
+                }
+            }
+        }
+        log(lines);
+    }
+
+    /**
+     * Note that the file, which may have been appended to, was replaced
+     * whole, so that it is only cut back to the length it has now.
+     * @param file is the file.
+     */
+    static void rewritten(File file) {
+        StringBuilder lines = new StringBuilder();
+        synchronized (Transaction.class) {
+            Path key = file.toPath().normalize();
+            if (_current == null || !_current._appended.containsKey(key)) {
+                return;
+            }
+            long length = file.isFile() ? file.length() : -1;
+            _current._appended.put(key, length);
+            lines.append("A\t").append(length).append('\t').append(key)
+                .append('\n');
+        }
+        log(lines);
+    }
+
+    /**
+     * Add LINES to the journal of appends and force it to disk.
+     * @param lines is the lines.
+     */
+    private static void log(StringBuilder lines) {
+        if (lines.length() == 0) {
+            return;
+        }
+        File file = join(APPENDS);
+        boolean created = !file.exists();
+        try {
+            Files.write(file.toPath(),
+                    lines.toString().getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (durable()) {
+            force(file.toPath());
+            if (created) {
+                force(parent(file.toPath()));
+            }
+        }
+    }
+
+    /**
+     * Replace the file with CONTENTS on commit, or now if no transaction
+     * is open.
+     * @param file is the file.
+     * @param contents is its new contents.
+     */
+    static void replace(File file, byte[] contents) {
+        File dir = join(TMP);
+        dir.mkdirs();
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        File tmp;
+        try {
+            tmp = File.createTempFile("tmp-", null, dir);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        writeContents(tmp, contents);
+        synchronized (Transaction.class) {
+            if (_current == null) {
+                move(tmp.toPath(), file.toPath());
+                return;
+            }
+            Path key = file.toPath().normalize();
+            _current._deleted.remove(key);
+            Path old = _current._replaced.put(key, tmp.toPath());
+            if (old != null) {
+                old.toFile().delete();
+            }
+        }
+    }
+
+    /**
+     * Delete the file on commit, or now if no transaction is open. A
+     * directory is only deleted if it is empty by then.
+     * @param file is the file.
+     */
+    static synchronized void delete(File file) {
+        if (_current == null) {
+            file.delete();
+            return;
+        }
+        Path key = file.toPath().normalize();
+        Path old = _current._replaced.remove(key);
+        if (old != null) {
+            old.toFile().delete();
+        }
+        _current._deleted.remove(key);
+        _current._deleted.add(key);
+    }
+
+    /**
+     * Check if committing forces files to disk.
+     * @return boolean.
+     */
+    static boolean durable() {
+        if (_durable == null) {
+            _durable = !"0".equals(System.getenv(ENV));
+        }
+        return _durable;
+    }
+
+    /**
+     * Set whether committing forces files to disk, whatever the
+     * environment says.
+     * @param durable is true if it does.
+     */
+    static void setDurable(boolean durable) {
+        _durable = durable;
+    }
+
+    /** Make the changes of this transaction and close it. */
+    void commit() {
+        synchronized (Transaction.class) {
+            pop();
+        }
+        boolean durable = durable();
+        if (durable) {
+            LinkedHashSet<Path> dirs = new LinkedHashSet<>();
+            for (Path p : _synced) {
+                force(p);
+                dirs.add(parent(p));
+            }
+            for (Path p : _replaced.values()) {
+                force(p);
+            }
+            for (Path dir : dirs) {
+                force(dir);
+            }
+        }
+        List<String> journal = new ArrayList<>();
+        for (Map.Entry<Path, Path> e : _replaced.entrySet()) {
+            journal.add("R\t" + e.getValue() + "\t" + e.getKey());
+        }
+        for (Path p : _deleted) {
+            journal.add("D\t" + p);
+        }
+        boolean logged = durable && journal.size() > 1;
+        if (logged) {
+            File tmp = join(TMP, "transaction");
+            writeContents(tmp, String.join("\n", journal) + "\n");
+            force(tmp.toPath());
+            move(tmp.toPath(), join(JOURNAL).toPath());
+            force(parent(join(JOURNAL).toPath()));
+        }
+        if (!_appended.isEmpty()) {
+            join(APPENDS).delete();
+        }
+        LinkedHashSet<Path> dirs = new LinkedHashSet<>();
+        for (String line : journal) {
+            dirs.add(parent(apply(line)));
+        }
+        if (durable) {
+            for (Path dir : dirs) {
+                force(dir);
+            }
+        }
+        if (logged) {
+            join(JOURNAL).delete();
+        }
+    }
+
+    /** Close this transaction if it was not committed, discarding the
+     *  files it would have replaced and cutting the files it appended to
+     *  back to their old lengths. Files it noted stay, unreferenced. */
+    void close() {
+        synchronized (Transaction.class) {
+            if (!_open) {
+                return;
+            }
+            pop();
+        }
+        for (Path p : _replaced.values()) {
+            p.toFile().delete();
+        }
+        if (!_appended.isEmpty()) {
+            cut(_appended);
+            join(APPENDS).delete();
+        }
+    }
+
+    /** Stop collecting changes into this transaction. */
+    private void pop() {
+        _open = false;
+        if (_current == this) {
+            _current = _outer;
+        }
+    }
+
+    /**
+     * Carry out the journal left by a transaction that did not finish
+     * committing. If it left none, cut the files it appended to back to
+     * the lengths in the journal of appends, which only holds whole
+     * lines once anything was appended.
+     * @param appends is false if a transaction is open, whose appends
+     *                are not to be undone.
+     */
+    private static void recover(boolean appends) {
+        File file = join(JOURNAL);
+        File lengths = join(APPENDS);
+        if (file.isFile()) {
+            for (String line : readContentsAsString(file).split("\n")) {
+                if (!line.isEmpty()) {
+                    apply(line);
+                }
+            }
+            file.delete();
+            lengths.delete();
+        } else if (appends && lengths.isFile()) {
+            String log = readContentsAsString(lengths);
+            LinkedHashMap<Path, Long> cuts = new LinkedHashMap<>();
+            for (String line : log.substring(0, log.lastIndexOf('\n') + 1)
+                     .split("\n")) {
+                String[] f = line.split("\t", 3);
+                if (f.length == 3) {
+                    cuts.put(Path.of(f[2]), Long.parseLong(f[1]));
+                }
+            }
+            cut(cuts);
+            lengths.delete();
+        }
+    }
+
+    /**
+     * Cut each file back to its length, or delete it if that is -1.
+     * @param lengths is the length of each file.
+     */
+    private static void cut(Map<Path, Long> lengths) {
+        for (Map.Entry<Path, Long> e : lengths.entrySet()) {
+            Path p = e.getKey();
+            if (e.getValue() < 0) {
+                p.toFile().delete();
+                continue;
+            }
+            try (FileChannel ch = FileChannel.open(p,
+                    StandardOpenOption.WRITE)) {
+                if (ch.size() > e.getValue()) {
+                    ch.truncate(e.getValue());
+                    if (durable()) {
+                        ch.force(true);
+                    }
+                }
+            } catch (NoSuchFileException excp) {
+                continue;
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Carry out a line of the journal: a rename, unless the temporary
+     * file is already gone, or a deletion.
+     * @param line is the line.
+     * @return the path changed.
+     */
+    private static Path apply(String line) {
+        String[] f = line.split("\t");
+        if (f[0].equals("R")) {
+            Path target = Path.of(f[2]);
+            if (Files.exists(Path.of(f[1]))) {
+                move(Path.of(f[1]), target);
+            }
+            return target;
+        }
+        Path p = Path.of(f[1]);
+        p.toFile().delete();
+        return p;
+    }
+
+    /**
+     * Rename SRC to DEST, replacing it in one step.
+     * @param src is the file renamed.
+     * @param dest is its new name.
+     */
+    private static void move(Path src, Path dest) {
+        try {
+            Files.move(src, dest, StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Get the directory holding the path.
+     * @param p is the path.
+     * @return Path.
+     */
+    private static Path parent(Path p) {
+        Path dir = p.toAbsolutePath().getParent();
+        return dir == null ? p : dir;
+    }
+
+    /**
+     * Force the file or directory to disk. A file deleted since it was
+     * noted is skipped, as is a directory the system cannot open.
+     * @param p is the path.
+     */
+    private static void force(Path p) {
+        long start = Trace.start();
+        try (FileChannel ch = FileChannel.open(p, StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (NoSuchFileException excp) {
+            return;
+        } catch (IOException excp) {
+            if (!Files.isDirectory(p)) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        Trace.end(Trace.FSYNC, start, 0);
+    }
+
+    /** The open transaction changes are collected into, or null. */
+    private static Transaction _current;
+
+    /** True if committing forces files to disk, or null if the
+     *  environment has not been read. */
+    private static Boolean _durable;
+
+    /** The transaction this one suspends. */
+    private final Transaction _outer;
+
+    /** New files to force. */
+    private final LinkedHashSet<Path> _synced = new LinkedHashSet<>();
+
+    /** Files to replace, each with the temporary file replacing it. */
+    private final LinkedHashMap<Path, Path> _replaced = new LinkedHashMap<>();
+
+    /** Files to delete, after the replacements. */
+    private final LinkedHashSet<Path> _deleted = new LinkedHashSet<>();
+
+    /** Files appended to, each with its length before, or -1. */
+    private final LinkedHashMap<Path, Long> _appended =
+        new LinkedHashMap<>();
+
+    /** True until this transaction is committed or closed. */
+    private boolean _open = true;
+}
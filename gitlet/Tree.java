@@ -0,0 +1,253 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * A class for trees. A tree lists one directory: the name of each file
+ * in it with the id of its blob, and the name of each subdirectory with
+ * the id of its tree. A tree is named by the sha1 of its encoding, so a
+ * directory that did not change between two commits is the same tree
+ * object in both, and a commit only writes the trees on the paths it
+ * changes. Trees read from the store are shared through its cache, so
+ * they are never changed once read.
+ * @author Ting Qi
+ */
+class Tree implements Serializable {
+
+    /** First character of a tree id. */
+    static final char PREFIX = 't';
+
+    /** An empty tree. */
+    Tree() {
+        _entries = new TreeMap<>();
+    }
+
+    /**
+     * Write the trees of the files, and get the id of the root.
+     * @param files is the map from path to blob id.
+     * @return String.
+     */
+    static String write(Map<String, String> files) {
+        return update(null, files);
+    }
+
+    /**
+     * Write the trees of ROOT with the changed files, reusing every
+     * unchanged subtree, and get the id of the new root.
+     * @param root is the id of the root tree, or null for an empty tree.
+     * @param changes is the map from path to new blob id, or to null if
+     *                the file is removed.
+     * @return String.
+     */
+    static String update(String root, Map<String, String> changes) {
+        return update(root, changes, true);
+    }
+
+    /**
+     * Write the trees of ROOT with the changed files.
+     * @param root is the id of the tree, or null.
+     * @param changes is the map from path below it to blob id or null.
+     * @param top is true if the tree must be written even if empty.
+     * @return the id of the new tree, or null if it is empty and not TOP.
+     */
+    private static String update(String root, Map<String, String> changes,
+                                 boolean top) {
+        if (changes.isEmpty() && root != null) {
+            return root;
+        }
+        Tree tree = new Tree();
+        if (root != null) {
+            tree._entries.putAll(ObjectStore.read(root, Tree.class)._entries);
+        }
+        HashMap<String, Map<String, String>> below = new HashMap<>();
+        for (Map.Entry<String, String> e : changes.entrySet()) {
+            String path = e.getKey();
+            int slash = path.indexOf('/');
+            if (slash < 0) {
+                if (e.getValue() == null) {
+                    tree._entries.remove(path);
+                } else {
+                    tree._entries.put(path, e.getValue());
+                }
+            } else {
+                below.computeIfAbsent(path.substring(0, slash),
+                        d -> new HashMap<>())
+                    .put(path.substring(slash + 1), e.getValue());
+            }
+        }
+        for (Map.Entry<String, Map<String, String>> e : below.entrySet()) {
+            String old = tree._entries.get(e.getKey());
+            if (old != null && !isTree(old)) {
+                old = null;
+            }
+            String sub = update(old, e.getValue(), false);
+            if (sub == null) {
+                tree._entries.remove(e.getKey());
+            } else {
+                tree._entries.put(e.getKey(), sub);
+            }
+        }
+        if (tree._entries.isEmpty() && !top) {
+            return null;
+        }
+        String id = PREFIX + Utils.sha1(tree.entries());
+        if (!ObjectStore.exists(id)) {
+            ObjectStore.write(id, tree);
+        }
+        return id;
+    }
+
+    /**
+     * Get every file below the tree.
+     * @param root is the id of the tree.
+     * @return HashMap from path to blob id.
+     */
+    static HashMap<String, String> flatten(String root) {
+        HashMap<String, String> result = new HashMap<>();
+        flatten(root, "", result);
+        return result;
+    }
+
+    /**
+     * Add every file below the tree to RESULT.
+     * @param id is the id of the tree.
+     * @param prefix is the path of the tree.
+     * @param result is the map from path to blob id.
+     */
+    private static void flatten(String id, String prefix,
+                                HashMap<String, String> result) {
+        Tree tree = ObjectStore.read(id, Tree.class);
+        for (Map.Entry<String, String> e : tree._entries.entrySet()) {
+            if (isTree(e.getValue())) {
+                flatten(e.getValue(), prefix + e.getKey() + "/", result);
+            } else {
+                result.put(prefix + e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Get the files that differ between two trees, without looking
+     * inside subtrees that are the same in both.
+     * @param from is the id of the old tree.
+     * @param to is the id of the new tree.
+     * @return TreeMap from path to its new blob id, or to null if the
+     *         file is not in the new tree.
+     */
+    static TreeMap<String, String> diff(String from, String to) {
+        TreeMap<String, String> result = new TreeMap<>();
+        diff(from, to, "", result);
+        return result;
+    }
+
+    /**
+     * Add the files that differ between two trees to RESULT.
+     * @param from is the id of the old tree, or null.
+     * @param to is the id of the new tree, or null.
+     * @param prefix is the path of the trees.
+     * @param result is the map from path to new blob id or null.
+     */
+    private static void diff(String from, String to, String prefix,
+                             TreeMap<String, String> result) {
+        if (from != null && from.equals(to)) {
+            return;
+        }
+        TreeMap<String, String> old = from == null ? new TreeMap<>()
+            : ObjectStore.read(from, Tree.class)._entries;
+        TreeMap<String, String> now = to == null ? new TreeMap<>()
+            : ObjectStore.read(to, Tree.class)._entries;
+        TreeSet<String> names = new TreeSet<>(old.keySet());
+        names.addAll(now.keySet());
+        for (String name : names) {
+            String x = old.get(name), y = now.get(name);
+            if (x != null && x.equals(y)) {
+                continue;
+            }
+            boolean xTree = x != null && isTree(x);
+            boolean yTree = y != null && isTree(y);
+            if (xTree || yTree) {
+                diff(xTree ? x : null, yTree ? y : null,
+                        prefix + name + "/", result);
+            }
+            if (x != null && !xTree) {
+                result.put(prefix + name, null);
+            }
+            if (y != null && !yTree) {
+                result.put(prefix + name, y);
+            }
+        }
+    }
+
+    /**
+     * Check if the id names a tree.
+     * @param id is the object id.
+     * @return boolean.
+     */
+    static boolean isTree(String id) {
+        return id.charAt(0) == PREFIX;
+    }
+
+    /**
+     * Get an estimate of the bytes this tree takes in memory.
+     * @return long.
+     */
+    long weight() {
+        long w = 64;
+        for (Map.Entry<String, String> e : _entries.entrySet()) {
+            w += 96 + 2 * (e.getKey().length() + e.getValue().length());
+        }
+        return w;
+    }
+
+    /**
+     * Get the encoded entries, which the id of the tree is the sha1 of.
+     * @return byte[].
+     */
+    private byte[] entries() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            encode(out);
+        } catch (IOException excp) {
+            throw Utils.error("Internal error encoding tree.");
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Write the entries in the format of Codec.
+     * @param out is the output.
+     * @throws IOException if it cannot be written.
+     */
+    void encode(DataOutputStream out) throws IOException {
+        Codec.writeVarint(out, _entries.size());
+        for (Map.Entry<String, String> e : _entries.entrySet()) {
+            Codec.writeString(out, e.getKey());
+            Codec.writeString(out, e.getValue());
+        }
+    }
+
+    /**
+     * Read a tree written by encode.
+     * @param in is the input.
+     * @return Tree.
+     * @throws IOException if it cannot be read.
+     */
+    static Tree decode(DataInputStream in) throws IOException {
+        Tree t = new Tree();
+        for (long n = Codec.readVarint(in); n > 0; n -= 1) {
+            t._entries.put(Codec.readString(in), Codec.readString(in));
+        }
+        return t;
+    }
+
+    /** The name of each entry, with the id of its blob or tree. */
+    private TreeMap<String, String> _entries;
+}
@@ -9,6 +9,8 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.charset.StandardCharsets;
@@ -32,27 +34,92 @@ class Utils {
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
-            for (Object val : vals) {
-                if (val instanceof byte[]) {
-                    md.update((byte[]) val);
-                } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
-                } else {
-                    throw new IllegalArgumentException("improper type to sha1");
-                }
+        long start = Trace.start();
+        MessageDigest md = digest();
+        long bytes = 0;
+        for (Object val : vals) {
+            byte[] b;
+            if (val instanceof byte[]) {
+                b = (byte[]) val;
+            } else if (val instanceof String) {
+                b = ((String) val).getBytes(StandardCharsets.UTF_8);
+            } else {
+                throw new IllegalArgumentException("improper type to sha1");
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
+            md.update(b);
+            bytes += b.length;
+        }
+        String result = hex(md.digest());
+        Trace.end(Trace.SHA1, start, bytes);
+        return result;
+    }
+
+    /** Returns the SHA-1 hash of the contents of FILE, which is read in
+     *  fixed-size chunks so that its size does not matter.  Throws
+     *  IllegalArgumentException in case of problems. */
+    static String sha1(File file) {
+        long start = Trace.start();
+        MessageDigest md = digest();
+        ByteBuffer buf = buffer();
+        long bytes = 0;
+        try (FileChannel in = FileChannel.open(file.toPath())) {
+            while (in.read(buf) >= 0) {
+                buf.flip();
+                bytes += buf.remaining();
+                md.update(buf);
+                buf.clear();
             }
-            return result.toString();
-        } catch (NoSuchAlgorithmException excp) {
-            throw new IllegalArgumentException("System does not support SHA-1");
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
         }
+        String result = hex(md.digest());
+        Trace.end(Trace.SHA1_FILE, start, bytes);
+        return result;
+    }
+
+    /** Returns this thread's chunk buffer, cleared for use.  The buffer
+     *  is shared with sha1(File), so it must not be held across a call to
+     *  that method. */
+    static ByteBuffer buffer() {
+        ByteBuffer buf = CHUNK.get();
+        buf.clear();
+        return buf;
+    }
+
+    /** Returns this thread's SHA-1 digest, reset for a new hash. */
+    static MessageDigest digest() {
+        MessageDigest md = DIGEST.get();
+        md.reset();
+        return md;
     }
 
+    /** Returns HASH as a hexadecimal numeral. */
+    static String hex(byte[] hash) {
+        Formatter result = new Formatter();
+        for (byte b : hash) {
+            result.format("%02x", b);
+        }
+        return result.toString();
+    }
+
+    /** A SHA-1 digest for each thread, reused from one hash to the next. */
+    private static final ThreadLocal<MessageDigest> DIGEST =
+        ThreadLocal.withInitial(() -> {
+            try {
+                return MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException excp) {
+                throw new IllegalArgumentException(
+                    "System does not support SHA-1");
+            }
+        });
+
+    /** Size of the chunks files are read in. */
+    static final int CHUNK_SIZE = 1 << 16;
+
+    /** A buffer for each thread for reading files in chunks. */
+    private static final ThreadLocal<ByteBuffer> CHUNK =
+        ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(CHUNK_SIZE));
+
     /** Returns the SHA-1 hash of the concatenation of the strings in
      *  VALS. */
     static String sha1(List<Object> vals) {
@@ -93,8 +160,11 @@ class Utils {
         if (!file.isFile()) {
             throw new IllegalArgumentException("must be a normal file");
         }
+        long start = Trace.start();
         try {
-            return Files.readAllBytes(file.toPath());
+            byte[] result = Files.readAllBytes(file.toPath());
+            Trace.end(Trace.READ, start, result.length);
+            return result;
         } catch (IOException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
@@ -112,6 +182,8 @@ class Utils {
      *  either a String or a byte array.  Throws IllegalArgumentException
      *  in case of problems. */
     static void writeContents(File file, Object... contents) {
+        long start = Trace.start();
+        long bytes = 0;
         try {
             if (file.isDirectory()) {
                 throw
@@ -120,13 +192,13 @@ class Utils {
             BufferedOutputStream str =
                 new BufferedOutputStream(Files.newOutputStream(file.toPath()));
             for (Object obj : contents) {
-                if (obj instanceof byte[]) {
-                    str.write((byte[]) obj);
-                } else {
-                    str.write(((String) obj).getBytes(StandardCharsets.UTF_8));
-                }
+                byte[] b = obj instanceof byte[] ? (byte[]) obj
+                    : ((String) obj).getBytes(StandardCharsets.UTF_8);
+                str.write(b);
+                bytes += b.length;
             }
             str.close();
+            Trace.end(Trace.WRITE, start, bytes);
         } catch (IOException | ClassCastException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
@@ -136,11 +208,13 @@ class Utils {
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
                                                  Class<T> expectedClass) {
+        long start = Trace.start();
         try {
             ObjectInputStream in =
                 new ObjectInputStream(new FileInputStream(file));
             T result = expectedClass.cast(in.readObject());
             in.close();
+            Trace.end(Trace.READ_OBJECT, start, file.length());
             return result;
         } catch (IOException | ClassCastException
                  | ClassNotFoundException excp) {
@@ -168,11 +242,13 @@ class Utils {
      *  lexicographic order as Java Strings.  Returns null if DIR does
      *  not denote a directory. */
     static List<String> plainFilenamesIn(File dir) {
+        long start = Trace.start();
         String[] files = dir.list(PLAIN_FILES);
         if (files == null) {
             return null;
         } else {
             Arrays.sort(files);
+            Trace.end(Trace.LIST, start, 0);
             return Arrays.asList(files);
         }
     }
@@ -205,12 +281,15 @@ class Utils {
 
     /** Returns a byte array containing the serialized contents of OBJ. */
     static byte[] serialize(Serializable obj) {
+        long start = Trace.start();
         try {
             ByteArrayOutputStream stream = new ByteArrayOutputStream();
             ObjectOutputStream objectStream = new ObjectOutputStream(stream);
             objectStream.writeObject(obj);
             objectStream.close();
-            return stream.toByteArray();
+            byte[] result = stream.toByteArray();
+            Trace.end(Trace.SERIALIZE, start, result.length);
+            return result;
         } catch (IOException excp) {
             throw error("Internal error serializing commit.");
         }
@@ -0,0 +1,112 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import static gitlet.Utils.*;
+
+/**
+ * A class for updating the working directory from the head commit to
+ * another. The trees of the two commits are diffed, so files whose blob
+ * is the same in both are only written if the working copy is missing
+ * or was changed, which the stat cache of the stage tells without
+ * reading it. Every file to be written or deleted, at any depth, is
+ * known before any is touched, so a working file that would be lost can
+ * stop the update first. Files that are gone are deleted, then the rest
+ * are written in parallel.
+ * @author Ting Qi
+ */
+class WorkTree {
+
+    /**
+     * Plan the change of the working files of the head commit of the
+     * repository into those of commit TO.
+     * @param repo is the repository.
+     * @param to is the commit to check out.
+     */
+    @SuppressWarnings("unchecked")
+    WorkTree(Repo repo, Commit to) {
+        long start = Trace.start();
+        _repo = repo;
+        TreeMap<String, String> changes =
+            Tree.diff(repo.head().tree(), to.tree());
+        _deletes = new ArrayList<>();
+        _writes = new ConcurrentHashMap<>();
+        for (Map.Entry<String, String> e : changes.entrySet()) {
+            if (e.getValue() == null) {
+                _deletes.add(e.getKey());
+            }
+        }
+        Map<String, String> files = to.getFile();
+        List<String> names = new ArrayList<>(files.keySet());
+        Stage stage = repo.stage();
+        ForkJoinPool.commonPool().submit(() ->
+            names.parallelStream().forEach(name -> {
+                String id = files.get(name);
+                if (changes.containsKey(name) || !join(name).isFile()
+                        || !id.equals(stage.hash(name))) {
+                    _writes.put(name, id);
+                }
+            })).join();
+        Trace.end(Trace.WORKTREE_PLAN, start, 0);
+    }
+
+    /**
+     * Check if a working file would be lost by the update: one it would
+     * write or delete that is untracked or has changes.
+     * @return boolean.
+     */
+    boolean inTheWay() {
+        long start = Trace.start();
+        List<String> names = new ArrayList<>(_deletes);
+        names.addAll(_writes.keySet());
+        boolean result = ForkJoinPool.commonPool().submit(() ->
+            names.parallelStream().anyMatch(_repo::inTheWay)).join();
+        Trace.end(Trace.WORKTREE_CHECK, start, 0);
+        return result;
+    }
+
+    /**
+     * Change the working files.
+     * @return the number of files written or deleted.
+     */
+    int update() {
+        long start = Trace.start();
+        for (String name : _deletes) {
+            delete(name);
+        }
+        List<String> names = new ArrayList<>(_writes.keySet());
+        ForkJoinPool.commonPool().submit(() ->
+            names.parallelStream().forEach(name ->
+                Blobs.write(_writes.get(name), join(name)))).join();
+        Trace.end(Trace.WORKTREE_UPDATE, start, 0);
+        return _deletes.size() + names.size();
+    }
+
+    /**
+     * Delete the working file, and any directories it leaves empty.
+     * @param name is the file name.
+     */
+    private static void delete(String name) {
+        File f = join(name);
+        f.delete();
+        for (File dir = f.getParentFile(); dir != null && dir.delete();
+             dir = dir.getParentFile()) {
+            continue;
+        }
+    }
+
+    /** The repository. */
+    private final Repo _repo;
+
+    /** The working files to delete. */
+    private final List<String> _deletes;
+
+    /** The blob to write to each working file that changes, by name. */
+    private final ConcurrentHashMap<String, String> _writes;
+}
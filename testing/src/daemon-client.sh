@@ -0,0 +1,16 @@
+# Client side of test11-daemon: waits for the daemon the test started,
+# which the test stops however this ends, then runs commands on it.
+G="java -ea gitlet.Main"
+for i in $(seq 100); do
+    [ -S .gitlet/daemon.sock ] && break
+    sleep 0.1
+done
+$G daemon
+$G add wug.txt
+$G commit "added wug"
+$G add nosuch.txt
+$G rm-branch
+echo "exit status $?"
+$G find "added wug"
+$G checkout -- wug.txt
+$G daemon stop